@@ -0,0 +1,82 @@
+package io.github.jdaapplications.guildbot.benchmark;
+
+import io.github.jdaapplications.guildbot.Fakes;
+import io.github.jdaapplications.guildbot.GuildBot;
+import io.github.jdaapplications.guildbot.executor.CommandTrie;
+import io.github.jdaapplications.guildbot.executor.ScriptRegistry;
+import io.github.jdaapplications.guildbot.executor.executable.Command;
+import java.util.concurrent.TimeUnit;
+import org.hjson.JsonObject;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares finding the command of a message through the {@link CommandTrie} with the regex split and config lookup used before.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DispatchBenchmark
+{
+    @Param({ "just some chat message", "&&unknown some args", "&&ping some args" })
+    public String content;
+
+    @Param({ "10", "200" })
+    public int commands;
+
+    protected GuildBot guildBot;
+    protected String prefix;
+    protected ScriptRegistry registry;
+
+    @Setup
+    public void setup()
+    {
+        this.guildBot = Fakes.guildBot();
+        this.prefix = this.guildBot.getConfig().getString("prefix", this.guildBot.getJDA().getSelfUser().getAsMention() + ' ');
+
+        final ScriptRegistry.Builder builder = ScriptRegistry.builder();
+        final Command command = new Command(this.guildBot, 1, new JsonObject(), "null");
+        for (int i = 0; i < this.commands; i++)
+            builder.putCommand("cmd-command" + i + "-alias" + i, command);
+        builder.putCommand("cmd-ping", command);
+        this.registry = builder.build();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        this.guildBot.getThreadPool().shutdownNow();
+    }
+
+    @Benchmark
+    public Command trie()
+    {
+        final String content = this.content;
+        if (!content.startsWith(this.prefix))
+            return null;
+
+        final int length = content.length();
+        final int start = this.prefix.length();
+        int end = start;
+        while (end < length && !CommandTrie.isWhitespace(content.charAt(end)))
+            end++;
+
+        return this.registry.getCommand(content, start, end);
+    }
+
+    @Benchmark
+    public Command regex()
+    {
+        final String prefix = this.guildBot.getConfig().getString("prefix", this.guildBot.getJDA().getSelfUser().getAsMention() + ' ');
+
+        String content = this.content;
+        if (!content.startsWith(prefix))
+            return null;
+
+        content = content.substring(prefix.length());
+        final String[] split = content.split("\\s+", 2);
+        return this.registry.getCommand(split[0].toLowerCase());
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.jdaapplications.guildbot.benchmark;
+
+import io.github.jdaapplications.guildbot.Fakes;
+import io.github.jdaapplications.guildbot.GuildBot;
+import io.github.jdaapplications.guildbot.executor.EngineMap;
+import io.github.jdaapplications.guildbot.executor.EnginePool;
+import java.util.concurrent.TimeUnit;
+import javax.script.ScriptContext;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares creating a new {@link EngineMap} with taking one from the {@link EnginePool} and resetting it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EngineMapBenchmark
+{
+    protected GuildBot guildBot;
+    protected EnginePool pool;
+
+    @Setup
+    public void setup()
+    {
+        this.guildBot = Fakes.guildBot();
+        this.pool = new EnginePool(this.guildBot);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        this.guildBot.getThreadPool().shutdownNow();
+    }
+
+    @Benchmark
+    public EngineMap create()
+    {
+        return new EngineMap();
+    }
+
+    @Benchmark
+    public EngineMap acquireAndRelease() throws Exception
+    {
+        final EngineMap engines = this.pool.acquire().join();
+        engines.getContext().setAttribute("args", "some args", ScriptContext.ENGINE_SCOPE);
+        this.pool.release(engines);
+        return engines;
+    }
+}
@@ -0,0 +1,69 @@
+package io.github.jdaapplications.guildbot.benchmark;
+
+import io.github.jdaapplications.guildbot.Fakes;
+import io.github.jdaapplications.guildbot.GuildBot;
+import io.github.jdaapplications.guildbot.executor.CommandExecutor;
+import io.github.jdaapplications.guildbot.executor.Execution;
+import io.github.jdaapplications.guildbot.executor.ScriptRegistry;
+import io.github.jdaapplications.guildbot.executor.executable.Command;
+import io.github.jdaapplications.guildbot.executor.executable.Method;
+import java.util.concurrent.TimeUnit;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+import org.hjson.JsonObject;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures a whole command execution, from scheduling it on the pool until its result has been dispatched,
+ * depending on the number of methods in the guild of which the command uses only one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExecuteBenchmark
+{
+    @Param({ "1", "10", "100" })
+    public int methods;
+
+    protected Command command;
+    protected MessageReceivedEvent event;
+    protected CommandExecutor executor;
+    protected GuildBot guildBot;
+    protected ScriptRegistry registry;
+
+    @Setup
+    public void setup()
+    {
+        this.guildBot = Fakes.guildBot();
+        this.executor = new CommandExecutor(this.guildBot);
+
+        final ScriptRegistry.Builder builder = ScriptRegistry.builder();
+        for (int i = 0; i < this.methods; i++)
+        {
+            final String name = "method" + i;
+            final JsonObject config = new JsonObject().add("type", "java.lang.Object").add("params", new JsonObject().add("a", "java.lang.String"));
+            builder.putMethod(name, new Method(this.guildBot, config, name, "a.length"));
+        }
+
+        // the result is not sent anywhere, so the benchmark does not depend on the fake channel
+        this.command = new Command(this.guildBot, 1, new JsonObject(), "method0(args); null");
+        builder.putCommand("cmd-ping", this.command);
+        this.registry = builder.build();
+
+        this.event = Fakes.messageReceived(this.guildBot, "&&ping some args");
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        this.guildBot.getThreadPool().shutdownNow();
+    }
+
+    @Benchmark
+    public Execution execute()
+    {
+        return this.executor.execute(this.registry, this.command, this.event, "some args").join();
+    }
+}
@@ -0,0 +1,67 @@
+package io.github.jdaapplications.guildbot.benchmark;
+
+import io.github.jdaapplications.guildbot.executor.Engine;
+import io.github.jdaapplications.guildbot.executor.EngineMap;
+import io.github.jdaapplications.guildbot.executor.PreparedScript;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import javax.script.ScriptContext;
+import javax.script.ScriptException;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares nashorn with graal, cold is the first execution of a script in a new jvm including the creation of the engines
+ * and warm is the execution of a compiled script once the jit had time to optimize it.
+ */
+@State(Scope.Benchmark)
+public class JavaScriptBenchmark
+{
+    protected static final String SCRIPT = "var sum = 0;\n"
+            + "for (var i = 0; i < 1000; i++) {\n"
+            + "    sum += i % (args.length + 1);\n"
+            + "}\n"
+            + "new ArrayList(Arrays.asList(sum, args)).size()";
+
+    @Param({ "js", "graaljs" })
+    public String lang;
+
+    protected PreparedScript compiled;
+    protected Engine engine;
+    protected EngineMap engines;
+    protected String executableScript;
+
+    @Setup
+    public void setup() throws ScriptException
+    {
+        this.engine = Engine.getEngine(this.lang);
+        this.executableScript = this.engine.getScript(JavaScriptBenchmark.SCRIPT, Arrays.asList("java.util"));
+        this.engines = new EngineMap();
+        this.engines.getContext().setAttribute("args", "some args", ScriptContext.ENGINE_SCOPE);
+        this.compiled = this.engine.compile(this.executableScript);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    public Object cold() throws ScriptException
+    {
+        // the shared state only warms up the engines of the other language, this map and compilation are new
+        final EngineMap engines = new EngineMap();
+        engines.getContext().setAttribute("args", "some args", ScriptContext.ENGINE_SCOPE);
+        return this.engine.compile(this.executableScript).eval(engines.get(this.engine), engines.getContext());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 10, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    @Fork(1)
+    public Object warm() throws ScriptException
+    {
+        return this.compiled.eval(this.engines.get(this.engine), this.engines.getContext());
+    }
+}
@@ -0,0 +1,48 @@
+package io.github.jdaapplications.guildbot.benchmark;
+
+import io.github.jdaapplications.guildbot.util.ScriptUtils;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the instrumentation of loops with interrupt checks, {@code ScriptUtilsTest} checks the instrumented scripts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoopCheckBenchmark
+{
+    protected static final String CHECK = "checkInterrupt();";
+    // jmh 1.20 breaks its json results on parameters containing semicolons or braces, so the scripts are selected by name
+    protected static final Map<String, String> SCRIPTS = new HashMap<>();
+
+    static
+    {
+        LoopCheckBenchmark.SCRIPTS.put("empty", "while (true);");
+        LoopCheckBenchmark.SCRIPTS.put("unbraced", "for (;;) x++;");
+        LoopCheckBenchmark.SCRIPTS.put("do", "do x++; while (true);");
+        LoopCheckBenchmark.SCRIPTS.put("braced", "while (true) { x++; }");
+    }
+
+    @Param({ "empty", "unbraced", "do", "braced" })
+    public String loop;
+
+    protected String script;
+
+    @Setup
+    public void setup()
+    {
+        this.script = LoopCheckBenchmark.SCRIPTS.get(this.loop);
+    }
+
+    @Benchmark
+    public String inject()
+    {
+        return ScriptUtils.injectLoopChecks(this.script, LoopCheckBenchmark.CHECK);
+    }
+}
@@ -0,0 +1,69 @@
+package io.github.jdaapplications.guildbot.benchmark;
+
+import io.github.jdaapplications.guildbot.Fakes;
+import io.github.jdaapplications.guildbot.GuildBot;
+import io.github.jdaapplications.guildbot.executor.EngineMap;
+import io.github.jdaapplications.guildbot.executor.executable.Method;
+import java.util.concurrent.TimeUnit;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import org.hjson.JsonObject;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares invoking a method on the engines of the caller with creating a new engine per call, as {@code Method.invoke} did before.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MethodBenchmark
+{
+    @Param({ "js", "groovy" })
+    public String lang;
+
+    protected EngineMap engines;
+    protected GuildBot guildBot;
+    protected Method method;
+    protected Method.InvokeableMethod invokeable;
+
+    @Setup
+    public void setup()
+    {
+        this.guildBot = Fakes.guildBot();
+
+        final JsonObject config = new JsonObject()
+                .add("lang", this.lang)
+                .add("type", "java.lang.Object")
+                .add("params", new JsonObject().add("a", "java.lang.Integer"));
+        this.method = new Method(this.guildBot, config, "increment", "a + 1");
+
+        this.engines = new EngineMap();
+        this.engines.getContext().setAttribute("args", "some args", ScriptContext.ENGINE_SCOPE);
+        this.invokeable = this.method.getInvokeableMethod(this.engines);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        this.guildBot.getThreadPool().shutdownNow();
+    }
+
+    @Benchmark
+    public Object invoke()
+    {
+        return this.invokeable.invoke(1);
+    }
+
+    @Benchmark
+    public Object invokeWithNewEngine() throws Exception
+    {
+        // the previous implementation: a new engine per call, the bindings of the caller copied into it
+        final ScriptEngine scriptEngine = this.method.getEngine().newScriptEngine();
+        scriptEngine.getContext().getBindings(ScriptContext.ENGINE_SCOPE).putAll(this.engines.getContext().getBindings(ScriptContext.ENGINE_SCOPE));
+        scriptEngine.put("a", 1);
+        return scriptEngine.eval(this.method.getProxyScript());
+    }
+}
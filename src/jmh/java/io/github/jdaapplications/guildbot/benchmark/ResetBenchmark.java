@@ -0,0 +1,43 @@
+package io.github.jdaapplications.guildbot.benchmark;
+
+import io.github.jdaapplications.guildbot.executor.Engine;
+import io.github.jdaapplications.guildbot.executor.EngineMap;
+import io.github.jdaapplications.guildbot.executor.PreparedScript;
+import java.util.concurrent.TimeUnit;
+import javax.script.ScriptException;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the reset of a map after a script defined a function, {@code EngineMapTest} checks that the function is gone afterwards.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResetBenchmark
+{
+    @Param({ "js", "groovy" })
+    public String lang;
+
+    protected PreparedScript define;
+    protected Engine engine;
+    protected EngineMap engines;
+
+    @Setup
+    public void setup() throws ScriptException
+    {
+        this.engine = Engine.getEngine(this.lang);
+        this.engines = new EngineMap();
+        this.define = this.engine.compile(this.engine == Engine.GROOVY ? "def leaked() { 1 }" : "function leaked() { return 1; }");
+    }
+
+    @Benchmark
+    public EngineMap defineAndReset() throws ScriptException
+    {
+        this.define.eval(this.engines.get(this.engine), this.engines.getContext());
+        this.engines.reset();
+        return this.engines;
+    }
+}
@@ -0,0 +1,88 @@
+package io.github.jdaapplications.guildbot.benchmark;
+
+import io.github.jdaapplications.guildbot.GuildBot;
+import io.github.jdaapplications.guildbot.util.ThreadPool;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.hjson.JsonObject;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the latency of a command while a reload storm keeps the pool busy,
+ * once with the reload work submitted as {@code INTERACTIVE} like before and once as {@code BACKGROUND}.
+ * <br>The storm keeps {@code 4 * threads} compilations of {@code compileMillis} each in flight, so the queue never runs dry.
+ * This only measures the latency, {@code ThreadPoolTest} checks that it stays bounded.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SchedulingBenchmark
+{
+    protected static final int THREADS = 4;
+
+    @Param({ "INTERACTIVE", "BACKGROUND" })
+    public ThreadPool.Priority stormPriority;
+
+    @Param({ "2" })
+    public int compileMillis;
+
+    protected AtomicInteger outstanding;
+    protected ThreadPool pool;
+    protected volatile boolean running;
+    protected Thread storm;
+
+    @Setup
+    public void setup()
+    {
+        final JsonObject config = new JsonObject()
+                .add("mode", "platform")
+                .add("threads", SchedulingBenchmark.THREADS)
+                .add("background", SchedulingBenchmark.THREADS / 2);
+        this.pool = new ThreadPool(config, (thread, throwable) -> GuildBot.log.error("An error occurred in thread " + thread.getName(), throwable));
+        this.outstanding = new AtomicInteger(0);
+        this.running = true;
+
+        final long compileTime = TimeUnit.MILLISECONDS.toNanos(this.compileMillis);
+        this.storm = new Thread(() ->
+        {
+            while (this.running)
+            {
+                if (this.outstanding.get() >= 4 * SchedulingBenchmark.THREADS)
+                {
+                    LockSupport.parkNanos(100_000);
+                    continue;
+                }
+                this.outstanding.incrementAndGet();
+                this.pool.execute(this.stormPriority, () ->
+                {
+                    // compiling a script keeps the thread busy, it does not wait for anything
+                    final long end = System.nanoTime() + compileTime;
+                    while (System.nanoTime() < end)
+                        ;
+                    this.outstanding.decrementAndGet();
+                });
+            }
+        }, "Reload-Storm");
+        this.storm.setDaemon(true);
+        this.storm.start();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException
+    {
+        this.running = false;
+        this.storm.join();
+        this.pool.shutdownNow();
+    }
+
+    @Benchmark
+    public void command()
+    {
+        CompletableFuture.runAsync(() -> {}, this.pool).join();
+    }
+}
@@ -0,0 +1,53 @@
+package io.github.jdaapplications.guildbot.benchmark;
+
+import io.github.jdaapplications.guildbot.executor.Engine;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the preparation of a script before it gets compiled.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScriptBenchmark
+{
+    @Param({ "js", "groovy" })
+    public String lang;
+
+    protected Engine engine;
+    protected Set<String> imports;
+    protected String script;
+    protected String codeBlock;
+
+    @Setup
+    public void setup()
+    {
+        this.engine = Engine.getEngine(this.lang);
+        this.imports = new HashSet<>(Arrays.asList("java.util", "java.util.concurrent", "net.dv8tion.jda.core.entities"));
+
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 50; i++)
+            builder.append("var value").append(i).append(" = args.length + ").append(i).append(";\n");
+        this.script = builder.toString();
+        this.codeBlock = "```" + this.lang + '\n' + this.script + "```";
+    }
+
+    @Benchmark
+    public String getScript()
+    {
+        return this.engine.getScript(this.script, this.imports);
+    }
+
+    @Benchmark
+    public String escapeCodeBlock()
+    {
+        return this.engine.escapeCodeBlock(this.codeBlock);
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.jdaapplications.guildbot.benchmark;
+
+import io.github.jdaapplications.guildbot.Fakes;
+import io.github.jdaapplications.guildbot.GuildBot;
+import io.github.jdaapplications.guildbot.executor.CommandExecutor;
+import io.github.jdaapplications.guildbot.executor.Execution;
+import io.github.jdaapplications.guildbot.executor.ScriptRegistry;
+import io.github.jdaapplications.guildbot.executor.executable.Command;
+import java.util.concurrent.TimeUnit;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+import org.hjson.JsonObject;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Runs many executions of one command at once against a single pool, twice as many as the pool has maps.
+ * <br>{@code ConcurrentExecutionTest} checks that these executions don't leak into each other.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class StressBenchmark
+{
+    @Param({ "js", "groovy" })
+    public String lang;
+
+    protected Command command;
+    protected MessageReceivedEvent event;
+    protected CommandExecutor executor;
+    protected GuildBot guildBot;
+    protected ScriptRegistry registry;
+
+    @Setup
+    public void setup()
+    {
+        this.guildBot = Fakes.guildBot();
+        this.executor = new CommandExecutor(this.guildBot);
+
+        // every execution leaves a variable behind, so the reset of the maps is part of the measurement
+        final String script = this.lang.equals("groovy") ? "leak = args\nnull" : "leak = args;\nnull";
+        this.command = new Command(this.guildBot, 1, new JsonObject().add("lang", this.lang), script);
+        this.registry = ScriptRegistry.builder().putCommand("cmd-stress", this.command).build();
+
+        this.event = Fakes.messageReceived(this.guildBot, "&&stress some args");
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        this.guildBot.getThreadPool().shutdownNow();
+    }
+
+    @Benchmark
+    public Execution execute()
+    {
+        return this.executor.execute(this.registry, this.command, this.event, "some args").join();
+    }
+}
@@ -1,8 +1,10 @@
 package io.github.jdaapplications.guildbot;
 
 import io.github.jdaapplications.guildbot.executor.CommandExecutor;
+import io.github.jdaapplications.guildbot.metrics.Metrics;
 import io.github.jdaapplications.guildbot.util.ExceptionUtils;
 import io.github.jdaapplications.guildbot.util.PropertyUtil;
+import io.github.jdaapplications.guildbot.util.ThreadPool;
 import net.dv8tion.jda.core.*;
 import net.dv8tion.jda.core.entities.Game;
 import net.dv8tion.jda.core.entities.MessageEmbed;
@@ -22,10 +24,6 @@ import java.awt.Color;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import javax.security.auth.login.LoginException;
 
 /**
@@ -37,36 +35,28 @@ public class GuildBot
 {
     public static final Logger log = LoggerFactory.getLogger(GuildBot.class);
 
-    private static final AtomicInteger threadCounter = new AtomicInteger(0);
     private static final Color error = Color.red;
 
     private final WebhookClient webhook;
     private final JsonObject config;
     private final JDA jda;
-    private final ScheduledThreadPoolExecutor threadPool;
+    private final ThreadPool threadPool;
+    private final Metrics metrics;
 
     private CommandExecutor commandExecutor;
 
     public GuildBot(final File config, final String token, final String webhookURL) throws LoginException, IllegalArgumentException, IOException
     {
         this.config = JsonValue.readHjson(FileUtils.readFileToString(config, "UTF-8")).asObject();
-
-        this.threadPool = new ScheduledThreadPoolExecutor(4, r ->
-        {
-            final Thread t = new Thread(r, "GuildBot-" + GuildBot.threadCounter.getAndIncrement());
-            t.setUncaughtExceptionHandler((thread, throwable) ->
-            {
-                GuildBot.log.error("An error occurred", throwable);
-                handleThrowable(throwable, "Uncaught error in thread: " + thread.getName());
-            });
-            return t;
-        });
-        this.threadPool.setKeepAliveTime(1, TimeUnit.MINUTES);
+        this.threadPool = this.createThreadPool();
+        this.metrics = new Metrics(this);
+        this.metrics.start();
 
         this.webhook = webhookURL == null
                 ? null
                 : new WebhookClientBuilder(webhookURL)
-                .setExecutorService(threadPool)
+                // error reports queue up behind each other instead of taking threads away from commands
+                .setExecutorService(this.threadPool.getExecutor(ThreadPool.Priority.REPORTING))
                 .setDaemon(true)
                 .setThreadFactory(r -> new Thread(r, "Error-Webhook-Thread"))
                 .build();
@@ -85,6 +75,24 @@ public class GuildBot
         this.jda = builder.buildAsync();
     }
 
+    /**
+     * Creates a bot around an existing {@link JDA} instance without connecting to Discord, used to benchmark the executor.
+     * <br>The {@link CommandExecutor} has to be created by the caller and errors are only logged.
+     *
+     * @param config
+     *        The config
+     * @param jda
+     *        The JDA instance
+     */
+    public GuildBot(final JsonObject config, final JDA jda)
+    {
+        this.config = config;
+        this.threadPool = this.createThreadPool();
+        this.metrics = new Metrics(this);
+        this.webhook = null;
+        this.jda = jda;
+    }
+
     public static void main(final String[] args) throws Exception
     {
         final File config = new File(System.getProperty("guildbot.config", "config.hjson"));
@@ -100,6 +108,16 @@ public class GuildBot
         new GuildBot(config, token, webhook);
     }
 
+    private ThreadPool createThreadPool()
+    {
+        final JsonValue executorConfig = this.config.get("executor");
+        return new ThreadPool(executorConfig == null ? new JsonObject() : executorConfig.asObject(), (thread, throwable) ->
+        {
+            GuildBot.log.error("An error occurred", throwable);
+            handleThrowable(throwable, "Uncaught error in thread: " + thread.getName());
+        });
+    }
+
     public CommandExecutor getCommandExecutor()
     {
         return this.commandExecutor;
@@ -115,7 +133,12 @@ public class GuildBot
         return this.jda;
     }
 
-    public ScheduledExecutorService getThreadPool()
+    public Metrics getMetrics()
+    {
+        return this.metrics;
+    }
+
+    public ThreadPool getThreadPool()
     {
         return this.threadPool;
     }
@@ -158,7 +181,12 @@ public class GuildBot
     @SubscribeEvent
     protected void onShutdown(final ShutdownEvent event)
     {
-        this.threadPool.setKeepAliveTime(10, TimeUnit.SECONDS);
-        this.threadPool.allowCoreThreadTimeOut(true);
+        if (this.commandExecutor != null)
+        {
+            this.commandExecutor.getSnapshot().save();
+            this.commandExecutor.getGlobalStore().flush();
+        }
+        this.metrics.stop();
+        this.threadPool.shutdown();
     }
 }
@@ -0,0 +1,60 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The lookup shared by the caches of compiled scripts, {@link GroovyClassCache} and {@link JavaClassCache}.
+ *
+ * @author Aljoscha Grebe
+ */
+public class ClassCaches
+{
+    /**
+     * Returns the cached entry of the given hash, compiling and caching it if it is not cached yet.
+     * <br>The script is compiled outside of the lock of the cache, so other scripts can be looked up meanwhile,
+     * two threads compiling the same script at once simply keep the first result.
+     *
+     * @param  classes
+     *         The cache, every access has to be synchronized on it
+     * @param  hash
+     *         The hash of the script
+     * @param  hits
+     *         Incremented if the entry was cached
+     * @param  misses
+     *         Incremented if the script had to be compiled
+     * @param  compiler
+     *         Compiles the script
+     *
+     * @throws E
+     *         If the script could not be compiled
+     *
+     * @return The cached entry
+     */
+    public static <V, E extends Exception> V lookup(final Map<String, V> classes, final String hash, final AtomicLong hits, final AtomicLong misses, final Compiler<V, E> compiler) throws E
+    {
+        synchronized (classes)
+        {
+            final V cached = classes.get(hash);
+            if (cached != null)
+            {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+
+        misses.incrementAndGet();
+        final V compiled = compiler.compile();
+        synchronized (classes)
+        {
+            final V cached = classes.putIfAbsent(hash, compiled);
+            return cached == null ? compiled : cached;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Compiler<V, E extends Exception>
+    {
+        V compile() throws E;
+    }
+}
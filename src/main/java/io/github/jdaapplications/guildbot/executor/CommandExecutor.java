@@ -1,12 +1,13 @@
 package io.github.jdaapplications.guildbot.executor;
 
-import gnu.trove.map.TLongObjectMap;
-import gnu.trove.map.hash.TLongObjectHashMap;
 import io.github.jdaapplications.guildbot.GuildBot;
 import io.github.jdaapplications.guildbot.executor.executable.Command;
 import io.github.jdaapplications.guildbot.executor.executable.Method;
 import io.github.jdaapplications.guildbot.executor.executable.Variables;
+import io.github.jdaapplications.guildbot.metrics.CommandMetrics;
+import io.github.jdaapplications.guildbot.metrics.Metrics;
 import io.github.jdaapplications.guildbot.util.GuildBotUtils;
+import io.github.jdaapplications.guildbot.util.ThreadPool;
 import net.dv8tion.jda.core.EmbedBuilder;
 import net.dv8tion.jda.core.JDA;
 import net.dv8tion.jda.core.MessageBuilder;
@@ -26,16 +27,22 @@ import net.dv8tion.jda.core.hooks.SubscribeEvent;
 import net.dv8tion.jda.core.managers.Presence;
 import net.dv8tion.jda.core.requests.RestAction;
 import org.hjson.JsonObject;
+import org.hjson.JsonValue;
 import javax.script.Bindings;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
-import javax.script.SimpleBindings;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.*;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 /**
@@ -44,25 +51,81 @@ import java.util.stream.Collectors;
 public class CommandExecutor
 {
     protected final GuildBot guildBot;
+    protected final EnginePool enginePool;
+    protected final ScriptLoader loader;
+    protected final ScriptSnapshot snapshot;
 
-    protected Map<String, Command> commands;
-    protected Map<String, Method> methods;
-    protected Map<String, Variables> vars;
+    protected final AtomicReference<ScriptRegistry> registry;
+    // the changes published while a load is running, the load applies them again to the registry it built
+    protected final Set<List<Change>> journals;
 
-    protected final Bindings globalStore;
+    protected final GlobalStore globalStore;
+
+    protected final AtomicLong appliedUpdates;
+    protected final AtomicLong mergedUpdates;
+    protected final AtomicLong skippedUpdates;
+    protected final RateLimiter rateLimiter;
+    protected final StatsCommand stats;
+
+    protected final Map<Long, ScheduledFuture<?>> pendingUpdates;
+    protected final long updateDelay;
+    // the number of quarantined executions which are still running per command channel
+    protected final Map<Long, Integer> stuckExecutions;
+
+    protected volatile ScriptLoader.Result lastLoad;
+    protected volatile String prefix;
 
     public CommandExecutor(final GuildBot guildBot)
     {
         this.guildBot = guildBot;
 
-        this.globalStore = new SimpleBindings();
+        // scripts of concurrently running commands share this store, it gets filled from disk by init
+        this.globalStore = new GlobalStore(guildBot);
+        this.enginePool = new EnginePool(guildBot);
+
+        // the caches are shared by all engines, so they are static and only their sizes come from the config
+        final JsonValue groovy = guildBot.getConfig().get("groovy");
+        Engine.GROOVY_CLASS_CACHE.setMaxSize((groovy == null ? new JsonObject() : groovy.asObject()).getInt("classCache", 256));
+        final JsonValue java = guildBot.getConfig().get("java");
+        Engine.JAVA_CLASS_CACHE.setMaxSize((java == null ? new JsonObject() : java.asObject()).getInt("classCache", 256));
+
+        this.loader = new ScriptLoader(guildBot);
+        this.snapshot = new ScriptSnapshot(guildBot);
+        this.registry = new AtomicReference<>(ScriptRegistry.EMPTY);
+        // the journals grow while they are in the set, so they have to be told apart by identity
+        this.journals = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        this.appliedUpdates = new AtomicLong(0);
+        this.mergedUpdates = new AtomicLong(0);
+        this.skippedUpdates = new AtomicLong(0);
+
+        this.pendingUpdates = new ConcurrentHashMap<>();
+        this.updateDelay = guildBot.getConfig().getLong("updateDelay", 500);
+        this.stuckExecutions = new ConcurrentHashMap<>();
+        this.rateLimiter = new RateLimiter(guildBot);
+        this.stats = new StatsCommand(this);
+
+        guildBot.getThreadPool().execute(ThreadPool.Priority.BACKGROUND, this::init);
+    }
 
-        guildBot.getThreadPool().execute(this::init);
+    /**
+     * The number of channel updates which compiled and published a changed script.
+     *
+     * @return The number of applied updates
+     */
+    public long getAppliedUpdates()
+    {
+        return this.appliedUpdates.get();
     }
 
     public Map<String, Command> getCommands()
     {
-        return Collections.unmodifiableMap(this.commands);
+        return this.registry.get().getCommands();
+    }
+
+    public EnginePool getEnginePool()
+    {
+        return this.enginePool;
     }
 
     public GuildBot getGuildBot()
@@ -70,20 +133,97 @@ public class CommandExecutor
         return this.guildBot;
     }
 
+    /**
+     * The statistics of the last time all scripts have been loaded.
+     *
+     * @return The result of the last load, {@code null} until the scripts have been loaded for the first time
+     */
+    public ScriptLoader.Result getLastLoad()
+    {
+        return this.lastLoad;
+    }
+
+    /**
+     * The number of channel events which have been merged into an already pending update of the same channel.
+     *
+     * @return The number of merged events
+     */
+    public long getMergedUpdates()
+    {
+        return this.mergedUpdates.get();
+    }
+
     public Map<String, Method> getMethods()
     {
-        return Collections.unmodifiableMap(this.methods);
+        return this.registry.get().getMethods();
+    }
+
+    /**
+     * The prefix all commands have to start with.
+     *
+     * @return The prefix, {@code null} until the executor has been initialized
+     */
+    public String getPrefix()
+    {
+        return this.prefix;
+    }
+
+    /**
+     * The store behind the {@code global} binding of all scripts.
+     *
+     * @return The global store
+     */
+    public GlobalStore getGlobalStore()
+    {
+        return this.globalStore;
+    }
+
+    public RateLimiter getRateLimiter()
+    {
+        return this.rateLimiter;
+    }
+
+    /**
+     * The current snapshot of all scripts.
+     * <br>The returned registry never changes, reloads publish a new one instead.
+     *
+     * @return The current registry
+     */
+    public ScriptRegistry getRegistry()
+    {
+        return this.registry.get();
+    }
+
+    /**
+     * The number of channel updates which have been skipped, either because the changed message is not part of the script
+     * or because the script and config did not change.
+     *
+     * @return The number of skipped updates
+     */
+    public long getSkippedUpdates()
+    {
+        return this.skippedUpdates.get();
+    }
+
+    /**
+     * The scripts of all channels as they have last been retrieved, mirrored to disk for fast restarts.
+     *
+     * @return The snapshot
+     */
+    public ScriptSnapshot getSnapshot()
+    {
+        return this.snapshot;
     }
 
     public Map<String, Variables> getVars()
     {
-        return Collections.unmodifiableMap(this.vars);
+        return this.registry.get().getVars();
     }
 
     @SubscribeEvent
     protected void onGuildMessageDelete(final GuildMessageDeleteEvent event)
     {
-        this.update(event.getChannel());
+        this.update(event.getChannel(), event.getMessageIdLong());
     }
 
     @SubscribeEvent
@@ -95,38 +235,72 @@ public class CommandExecutor
     @SubscribeEvent
     protected void onGuildMessageUpdate(final GuildMessageUpdateEvent event)
     {
-        this.update(event.getChannel());
+        this.update(event.getChannel(), event.getMessageIdLong());
     }
 
     @SubscribeEvent
     protected void onMessageReceived(final MessageReceivedEvent event)
     {
-        final String prefix = this.guildBot.getConfig().getString("prefix", this.guildBot.getJDA().getSelfUser().getAsMention() + ' ');
-
-        String content = event.getMessage().getContentRaw();
-        if (!content.startsWith(prefix))
+        // this runs for every message the bot receives, so nothing gets allocated until a command has been found
+        final String content = event.getMessage().getContentRaw();
+        if (!content.startsWith(this.prefix))
             return;
 
-        content = content.substring(prefix.length());
+        final int length = content.length();
+        final int start = this.prefix.length();
+        int end = start;
+        while (end < length && !CommandTrie.isWhitespace(content.charAt(end)))
+            end++;
 
-        final String[] split = content.split("\\s+", 2);
+        // the execution sticks to this snapshot, even if a reload publishes a new one in the meantime
+        final ScriptRegistry registry = this.registry.get();
+        final Command command = registry.getCommand(content, start, end);
 
-        final String commandName = split[0].toLowerCase();
+        // script commands take precedence, so the stats command never shadows a command of the guild
+        if (command == null && !this.stats.matches(content, start, end))
+            return;
+
+        int argsStart = end;
+        while (argsStart < length && CommandTrie.isWhitespace(content.charAt(argsStart)))
+            argsStart++;
 
-        final Command command = this.commands.get(commandName);
+        final String args = content.substring(argsStart);
 
         if (command == null)
+        {
+            this.guildBot.getThreadPool().execute(() -> this.stats.execute(event, args));
             return;
+        }
 
-        final String args = split.length > 1 ? split[1] : "";
+        // rejected invocations never reach the thread pool, so spamming a command can't starve the other commands
+        final String rejection = this.rateLimiter.tryAcquire(command, event.getChannel().getIdLong(), event.getAuthor().getIdLong());
+        if (rejection != null)
+        {
+            this.guildBot.getMetrics().getCommand(command.getChannelId()).recordRejection();
+            if (this.rateLimiter.shouldNotify(event.getChannel().getIdLong()))
+                event.getChannel().sendMessage(rejection).queue();
+            return;
+        }
 
-        this.execute(command, event, args);
+        // the slot of the bulkhead has to be given back even if the execution could not be submitted at all, e.g. because the pool shut down
+        final CompletableFuture<Execution> execution;
+        try
+        {
+            execution = this.execute(registry, command, event, args);
+        }
+        catch (final RuntimeException e)
+        {
+            this.rateLimiter.release(command);
+            throw e;
+        }
+        execution.whenComplete((result, throwable) -> this.rateLimiter.release(command));
     }
 
     @SubscribeEvent
     protected void onReconnect(final ReconnectedEvent event)
     {
-        this.reload();
+        // only channels which changed while the connection was lost have to be compiled again
+        this.reconcile();
     }
 
     @SubscribeEvent
@@ -144,8 +318,11 @@ public class CommandExecutor
     @SubscribeEvent
     protected void onTextChannelUpdateName(final TextChannelUpdateNameEvent event)
     {
-        this.delete(event, event.getOldName());
-        this.update(event.getChannel());
+        // the update replaces the script under the old name once the channel has been retrieved again
+        if (GuildBotUtils.isScriptChannel(event.getChannel()))
+            this.update(event.getChannel());
+        else
+            this.delete(event, event.getOldName());
     }
 
     @SubscribeEvent
@@ -154,7 +331,20 @@ public class CommandExecutor
         this.update(event.getChannel());
     }
 
-    protected synchronized void update(final TextChannel channel)
+    protected void update(final TextChannel channel)
+    {
+        this.update(channel, 0);
+    }
+
+    /**
+     * Schedules the retrieval of the script of the given channel, events of the same channel within {@code updateDelay} milliseconds are merged.
+     *
+     * @param channel
+     *        The channel to update
+     * @param messageId
+     *        The id of the message which changed, {@code 0} if the change is not caused by a single message
+     */
+    protected void update(final TextChannel channel, final long messageId)
     {
         if (channel.getGuild().getIdLong() != this.guildBot.getConfig().getLong("guildId", 0))
             return;
@@ -162,192 +352,492 @@ public class CommandExecutor
         if (!GuildBotUtils.isScriptChannel(channel))
             return;
 
-        try
+        // edits and deletions of messages older than the script can't change it
+        final ScriptSnapshot.Entry previous = this.snapshot.get(channel.getIdLong());
+        if (messageId != 0 && previous != null && !previous.isInWindow(messageId))
         {
-            final JsonObject config = GuildBotUtils.readConfig(channel);
-
-            Consumer<String> consumer;
+            this.skippedUpdates.incrementAndGet();
+            return;
+        }
 
-            if (channel.getName().startsWith("mthd-"))
-            {
-                consumer = script ->
-                {
-                    final String name = channel.getName().substring(5);
-                    this.methods.put(name, new Method(this.guildBot, config, name, script));
-                };
-            }
-            else if (channel.getName().startsWith("vars-"))
+        // events arriving while an update is pending are covered by it, so a burst of edits causes a single retrieval
+        this.pendingUpdates.compute(channel.getIdLong(), (channelId, pending) ->
+        {
+            if (pending != null && !pending.isDone())
             {
-                consumer = script ->
-                {
-                    final String name = channel.getName().substring(5);
-                    this.vars.put(name, new Variables(this.guildBot, config, script));
-                };
+                this.mergedUpdates.incrementAndGet();
+                return pending;
             }
-            else
+            return this.guildBot.getThreadPool().scheduleTimer(() ->
             {
-                consumer = script ->
-                {
-                    final Command command = new Command(this.guildBot, channel.getIdLong(), config, script);
-                    for (final String name : channel.getName().substring(4).split("-"))
-                        this.commands.put(name, command);
-                };
-            }
+                this.pendingUpdates.remove(channelId);
+                this.guildBot.getThreadPool().execute(ThreadPool.Priority.BACKGROUND, () -> this.retrieve(channelId));
+            }, this.updateDelay, TimeUnit.MILLISECONDS);
+        });
+    }
 
-            channel.getHistory().retrievePast(config.getInt("length", 1)).queue(l ->
+    /**
+     * Retrieves the script of the given channel and publishes it if it changed.
+     *
+     * @param channelId
+     *        The id of the channel, channels which got deleted or are no script channels anymore are ignored
+     */
+    protected void retrieve(final long channelId)
+    {
+        final TextChannel channel = this.guildBot.getJDA().getTextChannelById(channelId);
+        if (channel == null || !GuildBotUtils.isScriptChannel(channel))
+            return;
+
+        try
+        {
+            final JsonObject config = GuildBotUtils.readConfig(channel);
+
+            // the script gets compiled on the pool, not on the callback thread of JDA
+            channel.getHistory().retrievePast(config.getInt("length", 1)).queue(l -> this.guildBot.getThreadPool().execute(ThreadPool.Priority.BACKGROUND, () ->
             {
+                final long firstMessageId = l.isEmpty() ? 0 : l.get(l.size() - 1).getIdLong();
+                final long lastMessageId = l.isEmpty() ? 0 : l.get(0).getIdLong();
                 Collections.reverse(l);
                 final String script = l.stream()
                         .map(Message::getContentRaw)
                         .collect(Collectors.joining("\n"));
-                consumer.accept(script);
-            });
+                try
+                {
+                    this.apply(channel, config, new ScriptSnapshot.Entry(channel, firstMessageId, lastMessageId, script));
+                    this.snapshot.saveLater();
+                }
+                catch (final Exception e)
+                {
+                    this.fail(channel, e);
+                }
+            }));
         }
         catch (final Exception e)
         {
-            final String message = "An error occurred while updating " + channel.getName();
-            GuildBot.log.error(message, e);
-            this.guildBot.handleThrowable(e, message);
-            this.delete(channel);
+            this.fail(channel, e);
+        }
+    }
+
+    /**
+     * Reports a script which could not be updated and removes it, including the script under its previous name if the channel got renamed.
+     */
+    protected void fail(final TextChannel channel, final Exception e)
+    {
+        final String message = "An error occurred while updating " + channel.getName();
+        GuildBot.log.error(message, e);
+        this.guildBot.handleThrowable(e, message);
+
+        final ScriptSnapshot.Entry previous = this.snapshot.get(channel.getIdLong());
+        if (previous != null && !previous.getName().equals(channel.getName()))
+            this.delete(channel.getGuild().getIdLong(), previous.getName());
+        this.delete(channel);
+    }
+
+    /**
+     * Compiles the script of the given channel and publishes it, unless the snapshot shows that it did not change.
+     *
+     * @param  channel
+     *         The channel the script belongs to
+     * @param  config
+     *         The config of the channel
+     * @param  entry
+     *         The retrieved script
+     *
+     * @return {@code true} if the script has been published, {@code false} if it has been skipped
+     */
+    protected boolean apply(final TextChannel channel, final JsonObject config, final ScriptSnapshot.Entry entry)
+    {
+        // messages which don't change anything executable, like chat in a script channel, don't need to be compiled again
+        if (entry.hasSameScript(this.snapshot.get(channel.getIdLong())))
+        {
+            this.publish(UnaryOperator.identity(), () -> this.snapshot.put(entry));
+            this.skippedUpdates.incrementAndGet();
+            return false;
         }
 
+        // scripts get compiled here, so compile errors are reported when the channel is loaded
+        final UnaryOperator<ScriptRegistry> change = this.createChange(channel, config, entry.getScript());
+
+        // a renamed channel replaces its script under the old name in the same step
+        final ScriptSnapshot.Entry previous = this.snapshot.get(channel.getIdLong());
+        if (previous != null && !previous.getName().equals(channel.getName()))
+            this.publish(r -> change.apply(r.without(previous.getName())), () -> this.snapshot.put(entry));
+        else
+            this.publish(change, () -> this.snapshot.put(entry));
+
+        this.appliedUpdates.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Compiles the script of the given channel and returns the change which adds it to a registry.
+     * <br>The change itself is cheap, so it can be retried if another change got published concurrently.
+     */
+    protected UnaryOperator<ScriptRegistry> createChange(final TextChannel channel, final JsonObject config, final String script)
+    {
+        final String channelName = channel.getName();
+
+        if (channelName.startsWith("mthd-"))
+        {
+            final String name = channelName.substring(5);
+            final Method method = new Method(this.guildBot, config, name, script);
+            return r -> r.withMethod(name, method);
+        }
+        else if (channelName.startsWith("vars-"))
+        {
+            final String name = channelName.substring(5);
+            final Variables variables = new Variables(this.guildBot, config, script);
+            return r -> r.withVars(name, variables);
+        }
+        else
+        {
+            final Command command = new Command(this.guildBot, channel.getIdLong(), config, script);
+            return r -> r.withCommand(channelName, command);
+        }
     }
 
-    protected synchronized void delete(final GenericTextChannelEvent event, final String name)
+    protected void delete(final GenericTextChannelEvent event, final String name)
     {
         this.delete(event.getGuild().getIdLong(), name);
     }
 
-    protected synchronized void delete(final long guildId, final String name)
+    protected void delete(final long guildId, final String name)
     {
         if (guildId != this.guildBot.getConfig().getLong("guildId", 0))
             return;
 
-        if (name.startsWith("mthd-"))
-            this.methods.remove(name.substring(5));
-        else if (name.startsWith("vars-"))
-            this.vars.remove(name.substring(5));
-        else if (name.startsWith("cmd-"))
-            for (final String cName : name.substring(4).split("-"))
-                this.commands.remove(cName);
+        this.publish(r -> r.without(name), () -> this.snapshot.remove(name));
+        this.snapshot.saveLater();
     }
 
-    protected synchronized void delete(final TextChannel channel)
+    protected void delete(final TextChannel channel)
     {
         this.delete(channel.getGuild().getIdLong(), channel.getName());
     }
 
-    public synchronized void reload()
+    /**
+     * Applies a change to the current registry and the snapshot.
+     * <br>Loads which are running at the same time apply the change again to the registry they are about to publish, so it doesn't get lost.
+     *
+     * @param change
+     *        The change of the registry
+     * @param snapshotChange
+     *        The matching change of the snapshot
+     */
+    protected void publish(final UnaryOperator<ScriptRegistry> change, final Runnable snapshotChange)
+    {
+        synchronized (this.journals)
+        {
+            this.registry.updateAndGet(change);
+            snapshotChange.run();
+            for (final List<Change> journal : this.journals)
+                journal.add(new Change(change, snapshotChange));
+        }
+    }
+
+    /**
+     * Starts recording the changes published from now on, has to be called before a load starts retrieving the scripts it builds a registry of.
+     *
+     * @return The journal to pass to {@link #publish(List, ScriptRegistry, Runnable)}
+     */
+    protected List<Change> startJournal()
+    {
+        final List<Change> journal = new ArrayList<>();
+        synchronized (this.journals)
+        {
+            this.journals.add(journal);
+        }
+        return journal;
+    }
+
+    /**
+     * Publishes a registry built by a load, together with all changes which have been published since the load started.
+     *
+     * @param  journal
+     *         The journal returned by {@link #startJournal()} when the load started
+     * @param  built
+     *         The registry built by the load
+     * @param  snapshotChange
+     *         The change of the snapshot matching the built registry, {@code null} if the load did not change the snapshot
+     *
+     * @return The published registry
+     */
+    protected ScriptRegistry publish(final List<Change> journal, final ScriptRegistry built, final Runnable snapshotChange)
+    {
+        synchronized (this.journals)
+        {
+            this.journals.remove(journal);
+
+            ScriptRegistry registry = built;
+            if (snapshotChange != null)
+                snapshotChange.run();
+            for (final Change change : journal)
+            {
+                registry = change.registryChange.apply(registry);
+                change.snapshotChange.run();
+            }
+
+            this.registry.set(registry);
+            return registry;
+        }
+    }
+
+    public void reload()
+    {
+        Guild guild = this.guildBot.getJDA().getGuildById(this.guildBot.getConfig().getLong("guildId", 0));
+
+        if (guild == null)
+            return;
+
+        // build the next registry off the event thread and publish it in one step
+        this.guildBot.getThreadPool().execute(ThreadPool.Priority.BACKGROUND, () ->
+        {
+            final ScriptRegistry registry = this.load(guild);
+            GuildBot.log.info("Reloaded {}", registry);
+        });
+    }
+
+    /**
+     * Retrieves the scripts of all channels which changed since they have been added to the {@link ScriptSnapshot}.
+     */
+    public void reconcile()
     {
         Guild guild = this.guildBot.getJDA().getGuildById(this.guildBot.getConfig().getLong("guildId", 0));
 
         if (guild == null)
             return;
 
-        this.guildBot.getThreadPool().execute(() -> guild.getTextChannels().forEach(this::update));
+        this.guildBot.getThreadPool().execute(ThreadPool.Priority.BACKGROUND, () -> this.reconcile(guild));
+    }
+
+    /**
+     * Executes the given command asynchronously.
+     * <br>The execution waits for its engines without blocking a thread, see {@link EnginePool#acquire()},
+     * then passes through the stages {@link #prepare(Execution) prepare}, {@link #evalVars(Execution) evalVars},
+     * {@link #evalCommand(Execution) evalCommand} and {@link #dispatch(Execution) dispatch},
+     * all of them run on the same pool thread and none of them waits for another pool thread.
+     *
+     * @param  registry
+     *         The registry the command has been taken from
+     * @param  command
+     *         The command to execute
+     * @param  event
+     *         The event which triggered the command
+     * @param  args
+     *         The arguments of the command
+     *
+     * @return A future which completes once the result of the command has been dispatched
+     */
+    public CompletableFuture<Execution> execute(final ScriptRegistry registry, final Command command, final MessageReceivedEvent event, final String args)
+    {
+        final Metrics allMetrics = this.guildBot.getMetrics();
+        final CommandMetrics metrics = allMetrics.getCommand(command.getChannelId());
+        final long submitted = System.nanoTime();
+
+        return CompletableFuture.supplyAsync(() ->
+                {
+                    // once the pool can't replace stuck threads anymore, a command which got one stuck must not take the next one
+                    if (this.stuckExecutions.containsKey(command.getChannelId()) && this.guildBot.getThreadPool().isQuarantineFull())
+                        throw new RejectedExecutionException("The command in channel " + command.getChannelId() + " is stuck in an earlier execution");
+                    final Execution execution = new Execution(registry, command, event, args);
+                    execution.submitted = submitted;
+                    execution.started = System.nanoTime();
+                    return execution;
+                }, this.guildBot.getThreadPool())
+                .thenCompose(execution -> this.enginePool.acquire().thenApply(engines ->
+                {
+                    execution.engines = engines;
+                    return execution;
+                }))
+                // the engines may have been handed over by the thread which released them, so the execution goes back to the pool
+                .thenApplyAsync(this::prepare, this.guildBot.getThreadPool())
+                .thenApply(this::evalVars)
+                .thenApply(this::evalCommand)
+                .thenApply(this::dispatch)
+                .whenComplete((execution, throwable) ->
+                {
+                    if (throwable == null)
+                    {
+                        metrics.recordExecution(execution.getQueueWait(), execution.getPreparationTime(), execution.getEvaluationTime(), execution.getDispatchTime());
+                        if (execution.result instanceof TimeoutException)
+                            allMetrics.recordTimeout(command.getChannelId(), ((TimeoutException) execution.result).getMessage());
+                        else if (execution.result instanceof Throwable)
+                            metrics.recordError();
+                        return;
+                    }
+                    final Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                    if (cause instanceof TimeoutException)
+                    {
+                        allMetrics.recordTimeout(command.getChannelId(), "No engine became available in time");
+                        GuildBot.log.warn("Could not acquire an EngineMap for command in channel {}, {}", command.getChannelId(), this.enginePool);
+                        event.getChannel().sendMessage("The bot is busy right now, please try again later").queue();
+                        return;
+                    }
+                    if (cause instanceof RejectedExecutionException)
+                    {
+                        GuildBot.log.warn("Rejected command in channel {}, {} threads are stuck", command.getChannelId(), this.guildBot.getThreadPool().getQuarantinedCount());
+                        event.getChannel().sendMessage("This command is stuck in an earlier execution, please try again later").queue();
+                        return;
+                    }
+                    metrics.recordError();
+                    GuildBot.log.error("An error occurred while executing a command", cause);
+                    this.guildBot.handleThrowable(cause, String.format("Trying to execute command: %#s", event.getJDA().getTextChannelById(command.getChannelId())));
+                });
     }
 
-    protected synchronized void execute(final Command command, final MessageReceivedEvent event, final String args)
+    protected Execution prepare(final Execution execution)
     {
-        final EngineMap scriptEngines = new EngineMap();
+        // all following stages run on this thread, so its counters cover the whole execution until evalCommand
+        final Thread thread = Thread.currentThread();
+        execution.allocatedBytes = Watchdog.getAllocatedBytes(thread);
+        execution.cpuTime = Watchdog.getCpuTime(thread);
 
-        final ScriptContext context = scriptEngines.getContext();
+        final ScriptContext context = execution.engines.getContext();
         final Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
 
-        bindings.put("event", event);
-        bindings.put("args", args == null ? "" : args);
+        bindings.put("event", execution.event);
+        bindings.put("args", execution.args);
         bindings.put("guildBot", this.guildBot);
-        bindings.put("global", this.globalStore);
+        bindings.put("global", this.globalStore.getNamespace(execution.command.getNamespace()));
 
-        final ScheduledExecutorService pool = this.guildBot.getThreadPool();
-        for (final Entry<String, Variables> entry : this.vars.entrySet())
+        try
+        {
+            for (final Entry<String, Method> methodEntry : execution.dependencies.getMethods().entrySet())
+            {
+                final String methodName = methodEntry.getKey();
+                final Method method = methodEntry.getValue();
+                bindings.put(methodName, method.getInvokeableMethod(execution.engines));
+
+                for (final Entry<Engine, ScriptEngine> engineEntry : execution.engines.entrySet())
+                {
+                    final Engine engine = engineEntry.getKey();
+                    final PreparedScript script = method.getCompiledScript(engine);
+                    if (script != null)
+                        try
+                        {
+                            this.eval(() -> script.eval(engineEntry.getValue(), context), execution.command.getConfig(), null);
+                        }
+                        catch (final Exception e)
+                        {
+                            GuildBot.log.error("An error occurred while evaluating the method \"{}\"\n{}\n{}", methodName, method.getExecutableScript(engine), e);
+                            final String methodContext = String.format("Trying to evaluate method: %#s", execution.event.getJDA().getTextChannelById(methodName));
+                            this.guildBot.handleThrowable(e, methodContext);
+                        }
+                }
+            }
+        }
+        catch (final RuntimeException e)
+        {
+            this.enginePool.release(execution.engines);
+            throw e;
+        }
+
+        return execution;
+    }
+
+    protected Execution evalVars(final Execution execution)
+    {
+        for (final Entry<String, Variables> entry : execution.dependencies.getVars().entrySet())
         {
             final Variables variables = entry.getValue();
-            final ScriptEngine engine = scriptEngines.get(variables.getEngine());
             try
             {
-                final Future<?> future = pool.submit(() -> engine.eval(variables.getExecutableScript()));
-                future.get(variables.getConfig().getInt("timeout", this.guildBot.getConfig().getInt("timeout", 5)), TimeUnit.SECONDS);
+                this.eval(() -> variables.eval(execution.engines), variables.getConfig(), () -> this.quarantine(execution));
             }
             catch (final Exception e)
             {
                 final String varName = entry.getKey();
-                GuildBot.log.error("An error occurred while evaluating the vars \"{}\"\n{}\n{}", varName, variables.getExecutableScript(), e instanceof ExecutionException ? e.getCause() : e);
-                final String varContext = String.format("Trying to evaluate var: %#s", event.getJDA().getTextChannelById(varName));
+                GuildBot.log.error("An error occurred while evaluating the vars \"{}\"\n{}\n{}", varName, variables.getExecutableScript(), e);
+                final String varContext = String.format("Trying to evaluate var: %#s", execution.event.getJDA().getTextChannelById(varName));
                 this.guildBot.handleThrowable(e, varContext);
             }
         }
+        return execution;
+    }
 
-        for (final Entry<String, Method> methodEntry : this.methods.entrySet())
-        {
-            final String methodName = methodEntry.getKey();
-            final Method method = methodEntry.getValue();
-            bindings.put(methodName, method.getInvokeableMethod(context));
-
-            for (final Entry<Engine, ScriptEngine> engineEntry : scriptEngines.entrySet())
-            {
-                final Engine engine = engineEntry.getKey();
-                final String script = method.getExecutableScript(engine);
-                if (script != null)
-                    try
-                    {
-                        final Future<?> future = pool.submit(() -> engineEntry.getValue().eval(method.getExecutableScript(engine)));
-
-                        future.get(command.getConfig().getInt("timeout", this.guildBot.getConfig().getInt("timeout", 5)), TimeUnit.SECONDS);
-                    }
-                    catch (final Exception e)
-                    {
-                        GuildBot.log.error("An error occurred while evaluating the method \"{}\"\n{}\n{}", methodName, method.getExecutableScript(engine), e instanceof ExecutionException ? e.getCause() : e);
-                        final String methodContext = String.format("Trying to evaluate method: %#s", event.getJDA().getTextChannelById(methodName));
-                        this.guildBot.handleThrowable(e.getCause(), methodContext);
-                    }
-            }
-        }
-
-        final Future<?> future = pool.submit(() -> scriptEngines.get(command.getEngine()).eval(command.getExecutableScript()));
-
-        Object result;
-
+    protected Execution evalCommand(final Execution execution)
+    {
+        execution.prepared = System.nanoTime();
         try
         {
-            result = future.get(command.getConfig().getInt("timeout", this.guildBot.getConfig().getInt("timeout", 5)), TimeUnit.SECONDS);
+            execution.result = this.eval(() -> execution.command.eval(execution.engines), execution.command.getConfig(), () -> this.quarantine(execution));
         }
-        catch (final ExecutionException e)
+        catch (final Exception e)
         {
-            result = e.getCause();
+            execution.result = e;
         }
-        catch (TimeoutException | InterruptedException e)
+        finally
         {
-            future.cancel(true);
-            result = e;
+            execution.evaluated = System.nanoTime();
+            final Thread thread = Thread.currentThread();
+            execution.allocatedBytes = execution.allocatedBytes < 0 ? -1 : Watchdog.getAllocatedBytes(thread) - execution.allocatedBytes;
+            execution.cpuTime = execution.cpuTime < 0 ? -1 : Watchdog.getCpuTime(thread) - execution.cpuTime;
+            GuildBot.log.debug("Command in channel {} used {}ms of cpu time and allocated {} bytes",
+                    execution.command.getChannelId(), TimeUnit.NANOSECONDS.toMillis(execution.cpuTime), execution.allocatedBytes);
+
+            // the script is done, so the engines can already be used by the next execution while we dispatch the result
+            synchronized (execution)
+            {
+                if (!execution.quarantined)
+                    this.enginePool.release(execution.engines);
+                else
+                    this.stuckExecutions.computeIfPresent(execution.command.getChannelId(), (id, count) -> count == 1 ? null : count - 1);
+            }
         }
-        catch (final Exception e)
+        return execution;
+    }
+
+    /**
+     * Gives up on the engines of an execution whose script ignored its interrupt,
+     * so the pool can create a new map instead of waiting for a script which might never finish.
+     * <br>Until the script finishes, further executions of its command get rejected once the thread pool can't replace stuck threads anymore.
+     */
+    protected void quarantine(final Execution execution)
+    {
+        synchronized (execution)
         {
-            result = e;
+            if (execution.quarantined)
+                return;
+            execution.quarantined = true;
+            this.enginePool.discard(execution.engines);
+            this.stuckExecutions.merge(execution.command.getChannelId(), 1, Integer::sum);
         }
+    }
+
+    protected Execution dispatch(final Execution execution)
+    {
+        final Object result = execution.result;
+        final MessageChannel channel = execution.event.getChannel();
 
         if (result instanceof RestAction<?>)
             ((RestAction<?>) result).queue();
         else if (result instanceof String)
-            event.getChannel().sendMessage((String) result).queue();
+            channel.sendMessage((String) result).queue();
         else if (result instanceof Message)
-            event.getChannel().sendMessage((Message) result).queue();
+            channel.sendMessage((Message) result).queue();
         else if (result instanceof MessageEmbed)
-            event.getChannel().sendMessage((MessageEmbed) result).queue();
+            channel.sendMessage((MessageEmbed) result).queue();
         else if (result instanceof MessageBuilder)
-            event.getChannel().sendMessage(((MessageBuilder) result).build()).queue();
+            channel.sendMessage(((MessageBuilder) result).build()).queue();
         else if (result instanceof EmbedBuilder)
-            event.getChannel().sendMessage(((EmbedBuilder) result).build()).queue();
+            channel.sendMessage(((EmbedBuilder) result).build()).queue();
         else if (result instanceof Throwable)
         {
-            GuildBot.log.error("An error occurred while execution a command\n{}\n{}", command.getExecutableScript(), result);
-            final String commandContext = String.format("Trying to evaluate command: %#s", event.getJDA().getTextChannelById(command.getChannelId()));
+            GuildBot.log.error("An error occurred while execution a command\n{}\n{}", execution.command.getExecutableScript(), result);
+            final String commandContext = String.format("Trying to evaluate command: %#s", execution.event.getJDA().getTextChannelById(execution.command.getChannelId()));
             this.guildBot.handleThrowable((Throwable) result, commandContext);
-            event.getChannel().sendMessage("An error occurred").queue();
+            channel.sendMessage("An error occurred").queue();
         }
+        execution.dispatched = System.nanoTime();
+        return execution;
     }
 
-    protected synchronized void init()
+    protected Object eval(final Callable<?> script, final JsonObject config, final Runnable onQuarantine) throws Exception
+    {
+        return Watchdog.call(this.guildBot.getThreadPool(), script, ScriptLimits.of(config, this.guildBot.getConfig()), onQuarantine);
+    }
+
+    protected void init()
     {
         final JsonObject config = this.guildBot.getConfig();
 
@@ -363,6 +853,51 @@ public class CommandExecutor
             return;
         }
 
+        // the mention of the bot never changes, so the prefix does not have to be looked up for every message
+        this.prefix = config.getString("prefix", jda.getSelfUser().getAsMention() + ' ');
+
+        // warm up the engines while the messages are being retrieved
+
+        this.guildBot.getThreadPool().execute(this.enginePool::prestart);
+
+        // scripts expect the values of the last run, so the store has to be loaded before the first command
+
+        this.globalStore.load();
+
+        // serve the scripts of the last run until the channels have been checked for changes
+
+        final boolean warm = this.snapshot.read(guildId) && !this.snapshot.isEmpty();
+        if (warm)
+            this.loadSnapshot(guild);
+        else
+            this.load(guild);
+
+        GuildBot.log.info("Accepting commands now");
+
+        Presence presence = jda.getPresence();
+        Game game = Game.playing(this.prefix + "help");
+        presence.setPresence(OnlineStatus.ONLINE, game);
+
+        jda.addEventListener(this);
+
+        if (warm)
+            this.reconcile(guild);
+    }
+
+    /**
+     * Retrieves and compiles the scripts of all script channels of the guild and publishes them as the new registry.
+     * <br>Channels which don't respond in time are not waited for, they get added by separate updates afterwards.
+     *
+     * @param  guild
+     *         The guild to load the scripts of
+     *
+     * @return The published registry
+     */
+    protected ScriptRegistry load(final Guild guild)
+    {
+        // updates arriving while the channels are retrieved must not get lost by publishing the registry built from them
+        final List<Change> journal = this.startJournal();
+
         // get all relevant channels
 
         final List<TextChannel> channels = guild.getTextChannels().stream()
@@ -373,92 +908,181 @@ public class CommandExecutor
 
         // get configs in channel topic
 
-        final TLongObjectMap<JsonObject> configs = new TLongObjectHashMap<>(channelCount);
+        final Map<Long, JsonObject> configs = new HashMap<>(channelCount);
         channels.forEach(c -> configs.put(c.getIdLong(), GuildBotUtils.readConfig(c)));
 
         // get messages
 
-        final CountDownLatch latch = new CountDownLatch(channelCount);
-        final TLongObjectMap<String> messages = new TLongObjectHashMap<>(channelCount);
-        channels.forEach(c -> c.getHistory().retrievePast(configs.get(c.getIdLong()).getInt("length", 1)).queue(l ->
-        {
-            Collections.reverse(l);
-            messages.put(c.getIdLong(), l.stream()
-                    .map(Message::getContentRaw)
-                    .collect(Collectors.joining("\n")));
-            latch.countDown();
-        }, t ->
-        {
-            GuildBot.log.error("An error occurred while retrieving the messages of channel \"" + c.getName() + "\"", t);
-            this.guildBot.handleThrowable(t, "RestAction failure trying to retrieve history");
-            latch.countDown();
-        }));
+        final ScriptLoader.Result result = this.loader.load(channels, configs);
+        this.lastLoad = result;
 
-        try
+        final ScriptRegistry built = this.build(channels, configs, result.getScripts());
+        final ScriptRegistry registry = this.publish(journal, built, () -> this.snapshot.replace(result.getEntries().values()));
+        this.snapshot.save();
+
+        // channels which missed the deadline join the registry once they respond
+        result.getTimedOut().forEach(this::update);
+
+        return registry;
+    }
+
+    /**
+     * Publishes a registry built from the scripts of the {@link ScriptSnapshot} without retrieving any messages.
+     * <br>Channels which are not part of the snapshot are left out until {@link #reconcile(Guild)} retrieved them.
+     *
+     * @param  guild
+     *         The guild to load the scripts of
+     *
+     * @return The published registry
+     */
+    protected ScriptRegistry loadSnapshot(final Guild guild)
+    {
+        final List<Change> journal = this.startJournal();
+
+        final List<TextChannel> channels = guild.getTextChannels().stream()
+                .filter(GuildBotUtils::isScriptChannel)
+                .filter(c -> this.snapshot.get(c.getIdLong()) != null)
+                .collect(Collectors.toList());
+
+        // use the topic the script has been saved with, so they don't get out of sync until the channel is retrieved again
+
+        final Map<Long, JsonObject> configs = new HashMap<>(channels.size());
+        final Map<Long, String> messages = new HashMap<>(channels.size());
+        channels.forEach(c ->
         {
-            latch.await();
-        }
-        catch (final InterruptedException e)
+            final ScriptSnapshot.Entry entry = this.snapshot.get(c.getIdLong());
+            configs.put(c.getIdLong(), GuildBotUtils.readConfig(entry.getTopic()));
+            messages.put(c.getIdLong(), entry.getScript());
+        });
+
+        final ScriptRegistry registry = this.publish(journal, this.build(channels, configs, messages), null);
+
+        GuildBot.log.info("Loaded {} from {}", registry, this.snapshot);
+        return registry;
+    }
+
+    /**
+     * Retrieves the scripts of all script channels again and compiles the ones which are missing in the {@link ScriptSnapshot} or changed since,
+     * the channels which did not change keep serving the script of the snapshot.
+     * <br>A message may have been edited or deleted without any change of the channel itself,
+     * so every channel is retrieved and compared by the hash of its script, see {@link #apply(TextChannel, JsonObject, ScriptSnapshot.Entry)}.
+     *
+     * @param guild
+     *        The guild to reconcile
+     */
+    protected void reconcile(final Guild guild)
+    {
+        final List<TextChannel> channels = guild.getTextChannels().stream()
+                .filter(GuildBotUtils::isScriptChannel)
+                .collect(Collectors.toList());
+
+        // forget channels which got deleted while we were offline
+        final Set<Long> channelIds = channels.stream().map(TextChannel::getIdLong).collect(Collectors.toSet());
+        this.snapshot.getEntries().stream()
+                .filter(e -> !channelIds.contains(e.getChannelId()))
+                .collect(Collectors.toList())
+                .forEach(e -> this.delete(guild.getIdLong(), e.getName()));
+
+        final Map<Long, JsonObject> configs = new HashMap<>(channels.size());
+        channels.forEach(c -> configs.put(c.getIdLong(), GuildBotUtils.readConfig(c)));
+
+        // channels whose script did not change are skipped by apply without being compiled again
+        final ScriptLoader.Result result = this.loader.load(channels, configs);
+        int changed = 0;
+        for (final Entry<Long, ScriptSnapshot.Entry> entry : result.getEntries().entrySet())
         {
-            e.printStackTrace();
+            final TextChannel channel = guild.getTextChannelById(entry.getKey());
+            try
+            {
+                if (this.apply(channel, configs.get(entry.getKey()), entry.getValue()))
+                    changed++;
+            }
+            catch (final Exception e)
+            {
+                this.fail(channel, e);
+            }
         }
 
-        this.methods = new ConcurrentHashMap<>();
-        channels.stream().filter(c -> c.getName().startsWith("mthd-")).forEach(c ->
+        result.getTimedOut().forEach(this::update);
+
+        this.snapshot.save();
+        GuildBot.log.info("Reconciled {}, {} of {} channels changed", this.snapshot, changed, channels.size());
+    }
+
+    /**
+     * Compiles the given scripts into a new registry, scripts which fail to compile are reported and left out.
+     *
+     * @param  channels
+     *         The script channels
+     * @param  configs
+     *         The configs of the channels by channel id
+     * @param  messages
+     *         The scripts of the channels by channel id, channels without a script are left out
+     *
+     * @return The new registry
+     */
+    protected ScriptRegistry build(final List<TextChannel> channels, final Map<Long, JsonObject> configs, final Map<Long, String> messages)
+    {
+        final ScriptRegistry.Builder builder = ScriptRegistry.builder();
+
+        channels.stream().filter(c -> c.getName().startsWith("mthd-") && messages.containsKey(c.getIdLong())).forEach(c ->
         {
             try
             {
                 final String name = c.getName().substring(5);
-                this.methods.put(name, new Method(this.guildBot, configs.get(c.getIdLong()), name, messages.get(c.getIdLong())));
+                builder.putMethod(name, new Method(this.guildBot, configs.get(c.getIdLong()), name, messages.get(c.getIdLong())));
             }
             catch (final Exception e)
             {
-                this.delete(c);
                 GuildBot.log.error("An error occurred while initialising " + c.getName(), e);
                 this.guildBot.handleThrowable(e, "Setup for methods");
             }
         });
 
-        this.vars = new ConcurrentHashMap<>();
-        channels.stream().filter(c -> c.getName().startsWith("vars-")).forEach(c ->
+        channels.stream().filter(c -> c.getName().startsWith("vars-") && messages.containsKey(c.getIdLong())).forEach(c ->
         {
             try
             {
                 final String name = c.getName().substring(5);
-                this.vars.put(name, new Variables(this.guildBot, configs.get(c.getIdLong()), messages.get(c.getIdLong())));
+                builder.putVars(name, new Variables(this.guildBot, configs.get(c.getIdLong()), messages.get(c.getIdLong())));
             }
             catch (final Exception e)
             {
-                this.delete(c);
                 GuildBot.log.error("An error occurred while initialising " + c.getName(), e);
                 this.guildBot.handleThrowable(e, "Setup for vars");
             }
         });
 
-        this.commands = new ConcurrentHashMap<>();
-        channels.stream().filter(c -> c.getName().startsWith("cmd-")).forEach(c ->
+        channels.stream().filter(c -> c.getName().startsWith("cmd-") && messages.containsKey(c.getIdLong())).forEach(c ->
         {
             try
             {
                 final Command command = new Command(this.guildBot, c.getIdLong(),
                         configs.get(c.getIdLong()), messages.get(c.getIdLong()));
-                for (final String name : c.getName().substring(4).split("-"))
-                    this.commands.put(name, command);
+                builder.putCommand(c.getName(), command);
             }
             catch (final Exception e)
             {
-                this.delete(c);
                 GuildBot.log.error("An error occurred while initialising " + c.getName(), e);
                 this.guildBot.handleThrowable(e, "Setup for commands");
             }
         });
 
-        GuildBot.log.info("Accepting commands now");
+        return builder.build();
+    }
 
-        Presence presence = jda.getPresence();
-        Game game = Game.playing(config.getString("prefix", jda.getSelfUser().getAsMention() + ' ') + "help");
-        presence.setPresence(OnlineStatus.ONLINE, game);
+    /**
+     * A change published while a load was running, see {@link #publish(UnaryOperator, Runnable)}.
+     */
+    protected static class Change
+    {
+        protected final UnaryOperator<ScriptRegistry> registryChange;
+        protected final Runnable snapshotChange;
 
-        jda.addEventListener(this);
+        protected Change(final UnaryOperator<ScriptRegistry> registryChange, final Runnable snapshotChange)
+        {
+            this.registryChange = registryChange;
+            this.snapshotChange = snapshotChange;
+        }
     }
 }
@@ -0,0 +1,110 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import io.github.jdaapplications.guildbot.executor.executable.Command;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An immutable, case-insensitive prefix tree over the names of all commands.
+ * <br>Looking up a name walks the message character by character, so a message which does not start with a command name
+ * gets rejected after the first character which does not match any name, without copying or lower-casing anything.
+ *
+ * @author Aljoscha Grebe
+ */
+public class CommandTrie
+{
+    protected final Node root;
+
+    protected CommandTrie(final Node root)
+    {
+        this.root = root;
+    }
+
+    /**
+     * Builds a trie containing all given commands.
+     *
+     * @param  commands
+     *         The commands by their lower case names
+     *
+     * @return The new trie
+     */
+    public static CommandTrie of(final Map<String, Command> commands)
+    {
+        final Node root = new Node();
+        commands.forEach((name, command) ->
+        {
+            Node node = root;
+            for (int i = 0; i < name.length(); i++)
+                node = node.getOrCreate(Character.toLowerCase(name.charAt(i)));
+            node.command = command;
+        });
+        return new CommandTrie(root);
+    }
+
+    /**
+     * Whether the given character separates the command name from its arguments, matches the same characters as {@code \s} in a regex.
+     *
+     * @param  c
+     *         The character
+     *
+     * @return {@code true} if the character is whitespace
+     */
+    public static boolean isWhitespace(final char c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Finds the command whose name is the given region of the text, ignoring case.
+     *
+     * @param  text
+     *         The text containing the name
+     * @param  start
+     *         The index of the first character of the name
+     * @param  end
+     *         The index after the last character of the name
+     *
+     * @return The command, or {@code null} if there is no command with that name
+     */
+    public Command get(final CharSequence text, final int start, final int end)
+    {
+        Node node = this.root;
+        for (int i = start; i < end && node != null; i++)
+            node = node.get(Character.toLowerCase(text.charAt(i)));
+        return node == null ? null : node.command;
+    }
+
+    protected static class Node
+    {
+        protected static final char[] NO_KEYS = new char[0];
+        protected static final Node[] NO_CHILDREN = new Node[0];
+
+        // command names are short and use few distinct characters, a linear scan over small arrays beats hashing
+        protected char[] keys = Node.NO_KEYS;
+        protected Node[] children = Node.NO_CHILDREN;
+        protected Command command;
+
+        protected Node get(final char key)
+        {
+            final char[] keys = this.keys;
+            for (int i = 0; i < keys.length; i++)
+                if (keys[i] == key)
+                    return this.children[i];
+            return null;
+        }
+
+        protected Node getOrCreate(final char key)
+        {
+            final Node existing = this.get(key);
+            if (existing != null)
+                return existing;
+
+            final Node node = new Node();
+            this.keys = Arrays.copyOf(this.keys, this.keys.length + 1);
+            this.children = Arrays.copyOf(this.children, this.children.length + 1);
+            this.keys[this.keys.length - 1] = key;
+            this.children[this.children.length - 1] = node;
+            return node;
+        }
+    }
+}
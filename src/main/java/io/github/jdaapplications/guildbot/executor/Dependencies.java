@@ -0,0 +1,96 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import io.github.jdaapplications.guildbot.executor.executable.Executable;
+import io.github.jdaapplications.guildbot.executor.executable.Method;
+import io.github.jdaapplications.guildbot.executor.executable.Variables;
+import java.util.*;
+import java.util.Map.Entry;
+import org.hjson.JsonValue;
+
+/**
+ * The methods and vars an executable needs, so an execution only has to prepare those instead of the whole registry.
+ * <br>By default methods are found by looking for their names in the script and all vars are needed,
+ * as vars may define names in ways which can't be found without running them and may be run for their side effects.
+ * The {@code requires} key of the channel topic replaces this with an explicit list of channel names, which is the only way to skip vars.
+ *
+ * @author Aljoscha Grebe
+ */
+public class Dependencies
+{
+    protected final Map<String, Method> methods;
+    protected final Map<String, Variables> vars;
+
+    protected Dependencies(final Map<String, Method> methods, final Map<String, Variables> vars)
+    {
+        this.methods = Collections.unmodifiableMap(methods);
+        this.vars = Collections.unmodifiableMap(vars);
+    }
+
+    /**
+     * Finds the dependencies of the given executable within the given registry.
+     *
+     * @param  executable
+     *         The executable to find the dependencies of
+     * @param  registry
+     *         The registry containing the available methods and vars
+     *
+     * @return The dependencies
+     */
+    public static Dependencies resolve(final Executable executable, final ScriptRegistry registry)
+    {
+        final Map<String, Method> methods = new HashMap<>();
+        final Map<String, Variables> vars = new LinkedHashMap<>();
+
+        final JsonValue requires = executable.getConfig().get("requires");
+        if (requires != null)
+        {
+            for (final JsonValue value : requires.asArray())
+            {
+                final String channelName = value.asString();
+                if (channelName.startsWith("mthd-") && registry.getMethod(channelName.substring(5)) != null)
+                    methods.put(channelName.substring(5), registry.getMethod(channelName.substring(5)));
+                else if (channelName.startsWith("vars-") && registry.getVars().containsKey(channelName.substring(5)))
+                    vars.put(channelName.substring(5), registry.getVars().get(channelName.substring(5)));
+            }
+            return new Dependencies(methods, vars);
+        }
+
+        // methods see the bindings of the command and of all vars, so names used there are needed as well
+        vars.putAll(registry.getVars());
+        final Set<String> identifiers = new HashSet<>(executable.getIdentifiers());
+        for (final Variables variables : vars.values())
+            identifiers.addAll(variables.getIdentifiers());
+
+        boolean changed = true;
+        while (changed)
+        {
+            changed = false;
+
+            for (final Entry<String, Method> entry : registry.getMethods().entrySet())
+                if (!methods.containsKey(entry.getKey()) && identifiers.contains(entry.getKey()))
+                {
+                    methods.put(entry.getKey(), entry.getValue());
+                    identifiers.addAll(entry.getValue().getIdentifiers());
+                    changed = true;
+                }
+        }
+
+        return new Dependencies(methods, vars);
+    }
+
+    public Map<String, Method> getMethods()
+    {
+        return this.methods;
+    }
+
+    public Map<String, Variables> getVars()
+    {
+        return this.vars;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Dependencies[methods=" + this.methods.keySet() + ", vars=" + this.vars.keySet() + ']';
+    }
+}
@@ -1,14 +1,42 @@
 package io.github.jdaapplications.guildbot.executor;
 
+import com.oracle.truffle.js.scriptengine.GraalJSScriptEngine;
+import groovy.transform.CompileStatic;
+import groovy.transform.ThreadInterrupt;
+import io.github.jdaapplications.guildbot.util.ScriptUtils;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
 import org.apache.commons.lang3.tuple.Pair;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import org.codehaus.groovy.jsr223.GroovyCompiledScript;
+import org.codehaus.groovy.jsr223.GroovyScriptEngineImpl;
+import org.codehaus.groovy.util.ManagedConcurrentValueMap;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.HostAccess;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyArray;
+import org.graalvm.polyglot.proxy.ProxyObject;
 
 /**
  * @author Aljoscha Grebe
@@ -17,6 +45,29 @@ public enum Engine
 {
     GROOVY("groovy")
     {
+        @Override
+        public PreparedScript compile(final String script) throws ScriptException
+        {
+            return this.compile(script, false);
+        }
+
+        @Override
+        public PreparedScript compile(final String script, final boolean compileStatic) throws ScriptException
+        {
+            final Class<?> scriptClass;
+            try
+            {
+                scriptClass = Engine.GROOVY_CLASS_CACHE.get(script, compileStatic);
+            }
+            catch (final CompilationFailedException e)
+            {
+                throw new ScriptException(e);
+            }
+
+            // groovy keeps the methods defined by a script per engine, so the class has to be run by the engine of the caller
+            return (engine, context) -> new GroovyCompiledScript((GroovyScriptEngineImpl) engine, scriptClass).eval(context);
+        }
+
         @Override
         public String getProxyMethod(final String methodName, final Class<?> type, final List<Pair<String, ? extends Class<?>>> params)
         {
@@ -43,14 +94,192 @@ public enum Engine
             return Engine.SCRIPT_ENGINE_MANAGER.getEngineByName("groovy");
         }
 
+        @Override
+        public boolean reset(final ScriptEngine engine)
+        {
+            // the engine keeps every public method of every script it ran as closure, so a function defined by one command
+            // would stay callable by the next one and keep its script and class reachable, there is no api to clear them
+            if (Engine.GROOVY_GLOBAL_CLOSURES == null)
+                return false;
+            try
+            {
+                // the closures are held by a map of groovy's own which has no way to clear it, only the map it wraps has
+                ((Map<?, ?>) Engine.GROOVY_CLOSURE_MAP.get(Engine.GROOVY_GLOBAL_CLOSURES.get(engine))).clear();
+                return true;
+            }
+            catch (final IllegalAccessException e)
+            {
+                return false;
+            }
+        }
+
         @Override
         public String escapeCodeBlock(String script)
         {
             return escapeCodeBlock(script, "groovy");
         }
     },
+    GRAALJS("graaljs")
+    {
+        @Override
+        public PreparedScript compile(final String script) throws ScriptException
+        {
+            // polyglot contexts can't use the bindings of the context they are evaluated in directly, so the scopes are passed in as objects
+            // and looked up through with statements, names of the engine scope shadow names of the global scope just like they do in nashorn
+            final Source source = Source.newBuilder("js", "with (" + Engine.GRAAL_GLOBAL_SCOPE + ") { with (" + Engine.GRAAL_ENGINE_SCOPE + ") {\n"
+                    + ScriptUtils.injectLoopChecks(script, Engine.INTERRUPT_CHECK + ".check();") + "\n} }", "script.js").buildLiteral();
+
+            // a source is only parsed once it gets evaluated, so syntax errors would only show up on the first execution,
+            // the parsed source is cached by the shared engine and reused by the contexts which evaluate it
+            try (final Context parser = GraalEngineHolder.newContext().build())
+            {
+                parser.parse(source);
+            }
+            catch (final PolyglotException e)
+            {
+                throw new ScriptException(e);
+            }
+
+            return (engine, context) ->
+            {
+                final Context polyglot = ((GraalJSScriptEngine) engine).getPolyglotContext();
+                final Value globals = GraalEngineHolder.getGlobal(polyglot);
+                final Bindings global = context.getBindings(ScriptContext.GLOBAL_SCOPE);
+                globals.putMember(Engine.GRAAL_ENGINE_SCOPE, new GraalScope(context.getBindings(ScriptContext.ENGINE_SCOPE)));
+                globals.putMember(Engine.GRAAL_GLOBAL_SCOPE, new GraalScope(global == null ? Collections.emptyMap() : global));
+
+                try
+                {
+                    final Value result = polyglot.eval(source);
+                    return result.isNull() ? null : result.isHostObject() ? result.asHostObject() : result.as(Object.class);
+                }
+                catch (final RuntimeException e)
+                {
+                    throw new ScriptException(e);
+                }
+            };
+        }
+
+        @Override
+        public Bindings createBindings()
+        {
+            return new SimpleBindings();
+        }
+
+        @Override
+        public String getProxyMethod(final String methodName, final Class<?> type, final List<Pair<String, ? extends Class<?>>> params)
+        {
+            // the invokeable method is a functional interface, which graal can call like a js function already
+            return null;
+        }
+
+        @Override
+        public String getScript(final String script, final Collection<String> imports)
+        {
+            return Engine.JAVASCRIPT.getScript(script, imports);
+        }
+
+        @Override
+        public ScriptEngine newScriptEngine()
+        {
+            // all contexts share one polyglot engine, so a script parsed and optimized by one context is reused by the others
+            final GraalJSScriptEngine engine = GraalJSScriptEngine.create(GraalEngineHolder.ENGINE, GraalEngineHolder.newContext());
+
+            if (Engine.graalDefaults == null)
+                Engine.graalDefaults = Collections.unmodifiableSet(new HashSet<>(GraalEngineHolder.getGlobal(engine.getPolyglotContext()).getMemberKeys()));
+            return engine;
+        }
+
+        @Override
+        public boolean reset(final ScriptEngine engine)
+        {
+            // variables declared by a script end up in the global object of the context, which outlives the execution
+            final Value globals = GraalEngineHolder.getGlobal(((GraalJSScriptEngine) engine).getPolyglotContext());
+            for (final String key : new ArrayList<>(globals.getMemberKeys()))
+                if (!Engine.graalDefaults.contains(key))
+                    globals.removeMember(key);
+            return true;
+        }
+
+        @Override
+        public String escapeCodeBlock(String script)
+        {
+            return escapeCodeBlock(script, "js");
+        }
+    },
+    JAVA("java")
+    {
+        @Override
+        public PreparedScript compile(final String script) throws ScriptException
+        {
+            final Constructor<? extends JavaSnippet> constructor;
+            try
+            {
+                constructor = Engine.JAVA_CLASS_CACHE.get(Engine.JAVA_CLASS_NAME, ScriptUtils.injectLoopChecks(script, "checkInterrupt();"))
+                        .asSubclass(JavaSnippet.class)
+                        .getConstructor();
+            }
+            catch (final ClassCastException | NoSuchMethodException e)
+            {
+                throw new ScriptException(e);
+            }
+
+            // a new instance for every evaluation, the class itself is shared by all contexts
+            return (engine, context) ->
+            {
+                try
+                {
+                    return constructor.newInstance().eval(context);
+                }
+                catch (final ScriptException e)
+                {
+                    throw e;
+                }
+                catch (final Exception e)
+                {
+                    throw new ScriptException(e);
+                }
+            };
+        }
+
+        @Override
+        public String getProxyMethod(final String methodName, final Class<?> type, final List<Pair<String, ? extends Class<?>>> params)
+        {
+            // java scripts are compiled without knowing which methods they will see, they call them through JavaSnippet#invoke instead
+            return null;
+        }
+
+        @Override
+        public String getScript(final String script, final Collection<String> imports)
+        {
+            // everything in front of the script stays on its first line, so the line numbers of compilation errors match the script
+            // the if (true) keeps the return statement behind it reachable even if the script ends with a return statement of its own
+            return imports.stream().map(s -> "import " + s + ".*; ").collect(Collectors.joining())
+                    + "public class " + Engine.JAVA_CLASS_NAME + " extends " + JavaSnippet.class.getName()
+                    + " { @Override protected Object run() throws Exception { if (true) { " + script + "\n} return null; } }";
+        }
+
+        @Override
+        public ScriptEngine newScriptEngine()
+        {
+            return new JavaSnippetEngine();
+        }
+
+        @Override
+        public String escapeCodeBlock(String script)
+        {
+            return escapeCodeBlock(script, "java");
+        }
+    },
     JAVASCRIPT("js")
     {
+        @Override
+        public PreparedScript compile(final String script) throws ScriptException
+        {
+            // nashorn has no interrupt checks of its own, so every loop has to check it manually
+            return super.compile(ScriptUtils.injectLoopChecks(script, Engine.INTERRUPT_CHECK + ".check();"));
+        }
+
         @Override
         public String getProxyMethod(final String methodName, final Class<?> type, final List<Pair<String, ? extends Class<?>>> params)
         {
@@ -80,12 +309,74 @@ public enum Engine
 
     protected static final ScriptEngineManager SCRIPT_ENGINE_MANAGER = new ScriptEngineManager();
 
+    /**
+     * The name of the binding loops of instrumented scripts use to check whether they got interrupted.
+     */
+    public static final String INTERRUPT_CHECK = "__interruptCheck";
+
+    /**
+     * The classes of all compiled groovy scripts, shared by all engines.
+     */
+    public static final GroovyClassCache GROOVY_CLASS_CACHE;
+
+    /**
+     * The classes of all compiled java scripts, shared by all engines.
+     */
+    public static final JavaClassCache JAVA_CLASS_CACHE;
+
+    // every java script gets its own class loader, so all of them can use the same name
+    protected static final String JAVA_CLASS_NAME = "Snippet";
+
+    // the closures groovy keeps of the methods of all scripts an engine ran, null if this version of groovy has no such field
+    protected static final Field GROOVY_GLOBAL_CLOSURES;
+    // the map inside of the one above which actually holds the closures
+    protected static final Field GROOVY_CLOSURE_MAP;
+
+    protected static final String GRAAL_ENGINE_SCOPE = "__engineScope";
+    protected static final String GRAAL_GLOBAL_SCOPE = "__globalScope";
+
+    // the members of the global object of a fresh context, the same for every context as all of them use the same options
+    protected static volatile Set<String> graalDefaults;
+
     protected final String name;
 
+    protected volatile ScriptEngine compiler;
+
     static
     {
         for (final Engine engine : Engine.values())
             Engine.ENGINES.put(engine.getName(), engine);
+
+        // adds interrupt checks to every loop and method of the compiled scripts
+        final CompilerConfiguration configuration = new CompilerConfiguration();
+        configuration.addCompilationCustomizers(new ASTTransformationCustomizer(ThreadInterrupt.class));
+
+        // static scripts additionally get type checked and see the usual bindings as typed properties of their base class
+        final CompilerConfiguration staticConfiguration = new CompilerConfiguration();
+        staticConfiguration.setScriptBaseClass(TypedGroovyScript.class.getName());
+        staticConfiguration.addCompilationCustomizers(new ASTTransformationCustomizer(ThreadInterrupt.class), new ASTTransformationCustomizer(CompileStatic.class));
+
+        GROOVY_CLASS_CACHE = new GroovyClassCache(Engine.class.getClassLoader(), configuration, staticConfiguration, 256);
+
+        Field globalClosures;
+        Field closureMap;
+        try
+        {
+            globalClosures = GroovyScriptEngineImpl.class.getDeclaredField("globalClosures");
+            globalClosures.setAccessible(true);
+            closureMap = ManagedConcurrentValueMap.class.getDeclaredField("internalMap");
+            closureMap.setAccessible(true);
+        }
+        catch (final NoSuchFieldException | RuntimeException e)
+        {
+            // groovy engines get replaced instead of reset then
+            globalClosures = null;
+            closureMap = null;
+        }
+        GROOVY_GLOBAL_CLOSURES = globalClosures;
+        GROOVY_CLOSURE_MAP = closureMap;
+
+        JAVA_CLASS_CACHE = new JavaClassCache(Engine.class.getClassLoader(), 256);
     }
 
     Engine(final String name)
@@ -98,6 +389,76 @@ public enum Engine
         return Engine.ENGINES.get(name.toLowerCase());
     }
 
+    /**
+     * Compiles the given script once, so it can be evaluated without being parsed again.
+     * <br>Engines which are not {@link Compilable} fall back to interpreting the script on every evaluation.
+     *
+     * @param  script
+     *         The script as returned by {@link #getScript(String, Collection)} or {@link #getProxyMethod(String, Class, List)}
+     *
+     * @throws ScriptException
+     *         If the script could not be compiled
+     *
+     * @return The compiled script
+     */
+    public PreparedScript compile(final String script) throws ScriptException
+    {
+        final ScriptEngine compiler = this.getCompiler();
+
+        if (!(compiler instanceof Compilable))
+            return (engine, context) -> engine.eval(script, context);
+
+        final CompiledScript compiledScript = ((Compilable) compiler).compile(script);
+        return (engine, context) -> compiledScript.eval(context);
+    }
+
+    /**
+     * Compiles the given script once, statically if the engine supports it and {@code compileStatic} is set.
+     * <br>Only groovy distinguishes the two, its static scripts extend {@link TypedGroovyScript} so the type checker knows the usual bindings.
+     * All other engines ignore the flag.
+     *
+     * @param  script
+     *         The script as returned by {@link #getScript(String, Collection)}
+     * @param  compileStatic
+     *         Whether the script should be compiled statically
+     *
+     * @throws ScriptException
+     *         If the script could not be compiled, including type errors of a static script
+     *
+     * @return The compiled script
+     */
+    public PreparedScript compile(final String script, final boolean compileStatic) throws ScriptException
+    {
+        return this.compile(script);
+    }
+
+    /**
+     * Creates new bindings which can be used as {@link ScriptContext#ENGINE_SCOPE ENGINE_SCOPE} of a context
+     * the scripts {@link #compile(String) compiled} by this engine get evaluated in.
+     *
+     * @return New bindings
+     */
+    public Bindings createBindings()
+    {
+        return this.getCompiler().createBindings();
+    }
+
+    /**
+     * The engine shared by all scripts which got {@link #compile(String) compiled} by this engine.
+     *
+     * @return The shared engine
+     */
+    public ScriptEngine getCompiler()
+    {
+        if (this.compiler == null)
+            synchronized (this)
+            {
+                if (this.compiler == null)
+                    this.compiler = this.newScriptEngine();
+            }
+        return this.compiler;
+    }
+
     public String getName()
     {
         return this.name;
@@ -116,10 +477,114 @@ public enum Engine
         return engine;
     }
 
+    /**
+     * Removes everything the last execution left in the given engine which is not part of the shared context.
+     *
+     * @param  engine
+     *         An engine of this type
+     *
+     * @return {@code false} if the engine could not be reset and has to be replaced by a new one
+     */
+    public boolean reset(final ScriptEngine engine)
+    {
+        return true;
+    }
+
     public abstract String escapeCodeBlock(String script);
 
     protected static String escapeCodeBlock(String script, String langName)
     {
         return script.replaceAll("^```(?:" + langName + "\\n)?([\\S\\s]+)\\n?```$", "$1");
     }
+
+    /**
+     * Exposes bindings to graal scripts, leaving out the names nashorn defines itself,
+     * so graal scripts resolve them to their own builtins instead of the ones of the nashorn global behind the shared context.
+     */
+    protected static class GraalScope implements ProxyObject
+    {
+        protected final Map<String, Object> bindings;
+
+        protected GraalScope(final Map<String, Object> bindings)
+        {
+            this.bindings = bindings;
+        }
+
+        @Override
+        public Object getMember(final String key)
+        {
+            return this.bindings.get(key);
+        }
+
+        @Override
+        public Object getMemberKeys()
+        {
+            return ProxyArray.fromList(this.bindings.keySet().stream()
+                    .filter(key -> !GraalEngineHolder.NASHORN_NAMES.contains(key))
+                    .collect(Collectors.toList()));
+        }
+
+        @Override
+        public boolean hasMember(final String key)
+        {
+            return !GraalEngineHolder.NASHORN_NAMES.contains(key) && this.bindings.containsKey(key);
+        }
+
+        @Override
+        public void putMember(final String key, final Value value)
+        {
+            this.bindings.put(key, value.isHostObject() ? value.asHostObject() : value);
+        }
+
+        @Override
+        public boolean removeMember(final String key)
+        {
+            return this.bindings.remove(key) != null;
+        }
+    }
+
+    /**
+     * Holds the polyglot engine shared by all graal contexts, so it only gets created once the first script actually uses graaljs.
+     */
+    protected static class GraalEngineHolder
+    {
+        protected static final org.graalvm.polyglot.Engine ENGINE = org.graalvm.polyglot.Engine.create();
+
+        // the bindings of a context created by the script engine are not the global object its scripts see
+        protected static final Source GLOBAL = Source.create("js", "this");
+
+        // the names nashorn defines on a global object of its own, like JavaImporter, the shared context of an engine map is such a global
+        protected static final Set<String> NASHORN_NAMES;
+
+        static
+        {
+            try
+            {
+                NASHORN_NAMES = Collections.unmodifiableSet(((Bindings) Engine.JAVASCRIPT.getCompiler()
+                        .eval("Object.getOwnPropertyNames(this)", new SimpleBindings())).values().stream()
+                        .map(String.class::cast)
+                        .collect(Collectors.toSet()));
+            }
+            catch (final ScriptException e)
+            {
+                throw new IllegalStateException(e); // should never happen
+            }
+        }
+
+        protected static Value getGlobal(final Context context)
+        {
+            return context.eval(GraalEngineHolder.GLOBAL);
+        }
+
+        // sources are only shared between contexts with the same options
+        protected static Context.Builder newContext()
+        {
+            return Context.newBuilder("js")
+                    .engine(GraalEngineHolder.ENGINE)
+                    .allowHostAccess(HostAccess.ALL)
+                    .allowHostClassLookup(className -> true)
+                    .allowExperimentalOptions(true)
+                    .option("js.nashorn-compat", "true");
+        }
+    }
 }
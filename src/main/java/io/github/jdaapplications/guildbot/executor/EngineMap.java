@@ -1,52 +1,70 @@
 package io.github.jdaapplications.guildbot.executor;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import javax.script.Bindings;
+import javax.script.Invocable;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
 
 /**
  * @author Aljoscha Grebe
  */
 public class EngineMap
 {
+    protected static final String CLEAR = "__clear";
+
     protected final ScriptContext context;
+    protected final Set<String> defaults;
+    protected final Bindings engines;
     protected final Map<Engine, ScriptEngine> map;
+    protected final Map<Engine, Deque<Scope>> scopes;
 
     public EngineMap()
     {
         this.map = Collections.synchronizedMap(new EnumMap<>(Engine.class));
+        this.scopes = Collections.synchronizedMap(new EnumMap<>(Engine.class));
+
+        // the bindings of the shared js engine, so scripts compiled by it don't need a global of their own
+        this.context = new SimpleScriptContext();
+        this.context.setBindings(Engine.JAVASCRIPT.createBindings(), ScriptContext.ENGINE_SCOPE);
 
-        final ScriptEngine js = Engine.JAVASCRIPT.newScriptEngine();
+        final ScriptEngine js = Engine.JAVASCRIPT.newScriptEngine(this.context);
         this.map.put(Engine.JAVASCRIPT, js);
 
         try
         {
-            js.eval("engines = {}");
+            Engine.JAVASCRIPT.getCompiler().eval("engines = {}", this.context);
+            // undefines the given globals, see reset()
+            Engine.JAVASCRIPT.getCompiler().eval(EngineMap.CLEAR + " = (function (global) { return function () { for (var i = 0; i < arguments.length; i++) global[arguments[i]] = undefined; }; })(this)", this.context);
         }
         catch (final ScriptException e)
         {
             throw new RuntimeException(e); // should never happen
         }
 
-        final Bindings engines = (Bindings) js.get("engines");
-        engines.put("js", js);
+        this.engines = (Bindings) this.context.getAttribute("engines", ScriptContext.ENGINE_SCOPE);
+        this.engines.put("js", js);
+        this.engines.put("context", this.context);
 
-        this.context = js.getContext();
-        engines.put("context", this.context);
+        this.context.setAttribute(Engine.INTERRUPT_CHECK, Watchdog.INTERRUPT_CHECK, ScriptContext.ENGINE_SCOPE);
 
+        // a graal context costs far more than the other engines, so it is only created once a script of this map uses graaljs
         for (final Engine engine : Engine.values())
-            this.map.computeIfAbsent(engine, e ->
-            {
-                final ScriptEngine scriptEngine = e.newScriptEngine(this.context);
-                ((Bindings) scriptEngine.get("engines")).put(e.getName(), scriptEngine);
-                return scriptEngine;
-            });
+            if (engine != Engine.GRAALJS)
+                this.map.computeIfAbsent(engine, this::create);
+
+        this.defaults = Collections.unmodifiableSet(new HashSet<>(this.context.getBindings(ScriptContext.ENGINE_SCOPE).keySet()));
     }
 
     public Set<Entry<Engine, ScriptEngine>> entrySet()
@@ -56,11 +74,130 @@ public class EngineMap
 
     public ScriptEngine get(final Engine key)
     {
-        return this.map.get(key);
+        return this.map.computeIfAbsent(key, this::create);
     }
 
     public ScriptContext getContext()
     {
         return this.context;
     }
+
+    /**
+     * Takes a scope for the parameters of a method invocation, whose bindings are created once per engine and reused by later invocations.
+     * <br>Creating the bindings of nashorn costs about as much as creating the engine itself, so they are not created per invocation.
+     * A nested invocation gets a scope of its own, the scope has to be given back to {@link #releaseScope(Scope)} once the invocation is done.
+     *
+     * @param  engine
+     *         The engine of the method
+     *
+     * @return A scope whose engine scope is empty and whose global scope is the shared context of this map
+     */
+    public Scope acquireScope(final Engine engine)
+    {
+        final Deque<Scope> free = this.scopes.computeIfAbsent(engine, e -> new ArrayDeque<>());
+        synchronized (free)
+        {
+            final Scope scope = free.pollFirst();
+            if (scope != null)
+                return scope;
+        }
+        return new Scope(engine, this.context.getBindings(ScriptContext.ENGINE_SCOPE));
+    }
+
+    /**
+     * Clears the given scope and keeps it for the next invocation.
+     * <br>Scopes which might still be in use, e.g. by a method which timed out, must not be released.
+     *
+     * @param scope
+     *        The scope to release, must have been acquired from this map
+     */
+    public void releaseScope(final Scope scope)
+    {
+        final Bindings bindings = scope.context.getBindings(ScriptContext.ENGINE_SCOPE);
+        // the key set of a nashorn mirror is a copy, so we have to remove the keys one by one
+        for (final String key : new ArrayList<>(bindings.keySet()))
+            if (!scope.defaults.contains(key))
+                bindings.remove(key);
+
+        final Deque<Scope> free = this.scopes.computeIfAbsent(scope.engine, e -> new ArrayDeque<>());
+        synchronized (free)
+        {
+            free.offerFirst(scope);
+        }
+    }
+
+    /**
+     * Removes every binding which has been added to the shared context since this map has been created,
+     * so the map can be handed to the next execution without leaking {@code event}, {@code args} or script variables.
+     * <br>Engines which keep script variables outside of the shared context get {@link Engine#reset(ScriptEngine) reset} as well,
+     * engines which can't be reset are replaced by new ones.
+     */
+    public void reset()
+    {
+        final Bindings bindings = this.context.getBindings(ScriptContext.ENGINE_SCOPE);
+
+        // the key set of a nashorn mirror is a copy, so we have to remove the keys one by one
+        for (final String key : new ArrayList<>(bindings.keySet()))
+            if (!this.defaults.contains(key))
+                bindings.remove(key);
+
+        // functions and variables declared by a js script can't be deleted, so at least their values are dropped
+        final List<String> declared = new ArrayList<>(bindings.keySet());
+        declared.removeAll(this.defaults);
+        if (!declared.isEmpty())
+        {
+            try
+            {
+                ((Invocable) this.map.get(Engine.JAVASCRIPT)).invokeFunction(EngineMap.CLEAR, declared.toArray());
+            }
+            catch (final ScriptException | NoSuchMethodException e)
+            {
+                throw new IllegalStateException("Could not clear the declarations of the last execution", e);
+            }
+        }
+
+        for (final Engine engine : Engine.values())
+        {
+            final ScriptEngine scriptEngine = this.map.get(engine);
+            if (scriptEngine != null && !engine.reset(scriptEngine))
+            {
+                final ScriptEngine replacement = engine.newScriptEngine(this.context);
+                this.map.put(engine, replacement);
+                this.engines.put(engine.getName(), replacement);
+            }
+        }
+    }
+
+    protected ScriptEngine create(final Engine engine)
+    {
+        final ScriptEngine scriptEngine = engine.newScriptEngine(this.context);
+        this.engines.put(engine.getName(), scriptEngine);
+        return scriptEngine;
+    }
+
+    /**
+     * The context of a method invocation, see {@link #acquireScope(Engine)}.
+     */
+    public static class Scope
+    {
+        protected final ScriptContext context;
+        protected final Set<String> defaults;
+        protected final Engine engine;
+
+        protected Scope(final Engine engine, final Bindings global)
+        {
+            this.engine = engine;
+
+            // the parameters shadow the bindings of the caller, which stay visible through the global scope instead of being copied
+            this.context = new SimpleScriptContext();
+            this.context.setBindings(engine.createBindings(), ScriptContext.ENGINE_SCOPE);
+            this.context.setBindings(global, ScriptContext.GLOBAL_SCOPE);
+            this.defaults = Collections.unmodifiableSet(new HashSet<>(this.context.getBindings(ScriptContext.ENGINE_SCOPE).keySet()));
+        }
+
+        public ScriptContext getContext()
+        {
+            return this.context;
+        }
+    }
 }
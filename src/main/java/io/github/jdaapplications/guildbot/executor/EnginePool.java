@@ -0,0 +1,333 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import io.github.jdaapplications.guildbot.GuildBot;
+import io.github.jdaapplications.guildbot.util.ThreadPool;
+import java.util.Queue;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.hjson.JsonObject;
+
+/**
+ * A bounded pool of pre-warmed {@link EngineMap EngineMaps}.
+ * <br>Maps are handed out last-in-first-out, so the least recently used maps are the first ones to be evicted once they have been idle for too long.
+ *
+ * @author Aljoscha Grebe
+ */
+public class EnginePool
+{
+    protected final BlockingDeque<Idle> idle;
+    protected final AtomicInteger size;
+    protected final ThreadPool threadPool;
+    protected final Queue<CompletableFuture<EngineMap>> waiters;
+
+    protected final int min;
+    protected final int max;
+    protected final long idleTimeout;
+    protected final long maxWait;
+
+    protected final AtomicLong hits;
+    protected final AtomicLong misses;
+    protected final AtomicLong waits;
+    protected final AtomicLong waitTime;
+    protected final AtomicLong evictions;
+
+    public EnginePool(final GuildBot guildBot)
+    {
+        final JsonObject config = guildBot.getConfig().get("enginePool") == null
+                ? new JsonObject()
+                : guildBot.getConfig().get("enginePool").asObject();
+
+        this.max = Math.max(1, config.getInt("max", 8));
+        this.min = Math.min(this.max, Math.max(0, config.getInt("min", 2)));
+        this.idleTimeout = TimeUnit.SECONDS.toNanos(config.getLong("idleTimeout", 300));
+        this.maxWait = TimeUnit.SECONDS.toNanos(config.getLong("maxWait", guildBot.getConfig().getInt("timeout", 5)));
+
+        this.idle = new LinkedBlockingDeque<>(this.max);
+        this.size = new AtomicInteger(0);
+        this.threadPool = guildBot.getThreadPool();
+        this.waiters = new ConcurrentLinkedQueue<>();
+
+        this.hits = new AtomicLong(0);
+        this.misses = new AtomicLong(0);
+        this.waits = new AtomicLong(0);
+        this.waitTime = new AtomicLong(0);
+        this.evictions = new AtomicLong(0);
+
+        final long period = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(this.idleTimeout) / 2);
+        guildBot.getThreadPool().scheduleWithFixedDelay(this::evict, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Takes an idle map from the pool, creates a new one if the pool has not reached its maximum size yet
+     * or waits up to {@code maxWait} seconds for another execution to release its map.
+     * <br>Waiting doesn't block a thread, the future is completed by {@link #release(EngineMap)} or {@link #discard(EngineMap)} in the order the maps have been requested.
+     *
+     * @return A future of an {@link EngineMap} which has to be given back using either {@link #release(EngineMap)} or {@link #discard(EngineMap)},
+     *         completed with a {@link TimeoutException} if no map became available in time
+     */
+    public CompletableFuture<EngineMap> acquire()
+    {
+        // maps which become free go to the callers which are already waiting
+        if (this.waiters.isEmpty())
+        {
+            final Idle entry = this.idle.pollFirst();
+            if (entry != null)
+            {
+                this.hits.incrementAndGet();
+                return CompletableFuture.completedFuture(entry.map);
+            }
+
+            final EngineMap created = this.tryCreate();
+            if (created != null)
+                return CompletableFuture.completedFuture(created);
+        }
+
+        this.waits.incrementAndGet();
+        final long start = System.nanoTime();
+        final CompletableFuture<EngineMap> waiter = new CompletableFuture<>();
+        final ScheduledFuture<?> timeout = this.threadPool.schedule(() -> waiter.completeExceptionally(
+                new TimeoutException("No EngineMap became available within " + TimeUnit.NANOSECONDS.toSeconds(this.maxWait) + " seconds")), this.maxWait, TimeUnit.NANOSECONDS);
+        waiter.whenComplete((map, throwable) ->
+        {
+            timeout.cancel(false);
+            this.waitTime.addAndGet(System.nanoTime() - start);
+        });
+
+        this.waiters.add(waiter);
+        // a map may have been released before we were added
+        this.handOver();
+        return waiter;
+    }
+
+    /**
+     * Gives idle maps or free capacity to the waiting callers, callers which already timed out are skipped.
+     */
+    protected void handOver()
+    {
+        synchronized (this.waiters)
+        {
+            CompletableFuture<EngineMap> waiter;
+            while ((waiter = this.waiters.peek()) != null)
+            {
+                if (waiter.isDone())
+                {
+                    this.waiters.poll();
+                    continue;
+                }
+
+                final Idle entry = this.idle.pollFirst();
+                if (entry != null)
+                {
+                    this.waiters.poll();
+                    if (waiter.complete(entry.map))
+                        this.hits.incrementAndGet();
+                    else
+                        this.idle.offerFirst(entry);
+                    continue;
+                }
+
+                if (!this.reserve())
+                    return;
+                this.waiters.poll();
+
+                // creating a map takes a while, so it is not done by the thread which released or discarded a map
+                final CompletableFuture<EngineMap> target = waiter;
+                this.threadPool.execute(() ->
+                {
+                    final EngineMap map;
+                    try
+                    {
+                        map = this.create();
+                    }
+                    catch (final RuntimeException e)
+                    {
+                        target.completeExceptionally(e);
+                        return;
+                    }
+                    if (!target.complete(map))
+                        this.offer(map);
+                });
+            }
+        }
+    }
+
+    /**
+     * Resets the given map and puts it back into the pool.
+     *
+     * @param map
+     *        The map to release, must have been acquired from this pool
+     */
+    public void release(final EngineMap map)
+    {
+        try
+        {
+            map.reset();
+        }
+        catch (final Exception e)
+        {
+            GuildBot.log.error("An error occurred while resetting an EngineMap, discarding it", e);
+            this.discard(map);
+            return;
+        }
+
+        this.offer(map);
+    }
+
+    protected void offer(final EngineMap map)
+    {
+        if (!this.idle.offerFirst(new Idle(map)))
+            this.size.decrementAndGet();
+        this.handOver();
+    }
+
+    /**
+     * Drops the given map without putting it back into the pool.
+     * <br>This has to be used for maps which might still be in use, e.g. by a script which ignored its timeout.
+     *
+     * @param map
+     *        The map to discard, must have been acquired from this pool
+     */
+    public void discard(final EngineMap map)
+    {
+        this.size.decrementAndGet();
+        this.handOver();
+    }
+
+    /**
+     * Fills the pool up to its minimum size.
+     */
+    public void prestart()
+    {
+        while (this.size.get() < this.min)
+        {
+            final EngineMap map = this.tryCreate();
+            if (map == null)
+                return;
+            this.misses.decrementAndGet();
+            this.release(map);
+        }
+    }
+
+    protected void evict()
+    {
+        final long deadline = System.nanoTime() - this.idleTimeout;
+
+        Idle entry;
+        while (this.size.get() > this.min
+                && (entry = this.idle.peekLast()) != null
+                && entry.since - deadline < 0
+                && this.idle.removeLastOccurrence(entry))
+        {
+            this.size.decrementAndGet();
+            this.evictions.incrementAndGet();
+        }
+    }
+
+    protected EngineMap tryCreate()
+    {
+        return this.reserve() ? this.create() : null;
+    }
+
+    /**
+     * Counts a new map against the maximum size of the pool.
+     *
+     * @return {@code true} if the pool had room for another map, which then has to be created using {@link #create()}
+     */
+    protected boolean reserve()
+    {
+        int current;
+        do
+        {
+            current = this.size.get();
+            if (current >= this.max)
+                return false;
+        }
+        while (!this.size.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    protected EngineMap create()
+    {
+        this.misses.incrementAndGet();
+        try
+        {
+            return new EngineMap();
+        }
+        catch (final RuntimeException e)
+        {
+            this.size.decrementAndGet();
+            throw e;
+        }
+    }
+
+    public long getEvictions()
+    {
+        return this.evictions.get();
+    }
+
+    public long getHits()
+    {
+        return this.hits.get();
+    }
+
+    public int getIdle()
+    {
+        return this.idle.size();
+    }
+
+    public int getMax()
+    {
+        return this.max;
+    }
+
+    public int getMin()
+    {
+        return this.min;
+    }
+
+    public long getMisses()
+    {
+        return this.misses.get();
+    }
+
+    public int getSize()
+    {
+        return this.size.get();
+    }
+
+    public long getWaitTime(final TimeUnit unit)
+    {
+        return unit.convert(this.waitTime.get(), TimeUnit.NANOSECONDS);
+    }
+
+    public long getWaits()
+    {
+        return this.waits.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("EnginePool[size=%d, idle=%d, hits=%d, misses=%d, waits=%d, waitTime=%dms, evictions=%d]",
+                this.getSize(), this.getIdle(), this.getHits(), this.getMisses(), this.getWaits(), this.getWaitTime(TimeUnit.MILLISECONDS), this.getEvictions());
+    }
+
+    protected static class Idle
+    {
+        protected final EngineMap map;
+        protected final long since;
+
+        protected Idle(final EngineMap map)
+        {
+            this.map = map;
+            this.since = System.nanoTime();
+        }
+    }
+}
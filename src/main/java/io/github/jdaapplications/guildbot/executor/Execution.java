@@ -0,0 +1,141 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import io.github.jdaapplications.guildbot.executor.executable.Command;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+
+/**
+ * The state of a single command execution while it passes through the stages of the {@link CommandExecutor}.
+ *
+ * @author Aljoscha Grebe
+ */
+public class Execution
+{
+    protected final String args;
+    protected final Command command;
+    protected final Dependencies dependencies;
+    protected final MessageReceivedEvent event;
+    protected final ScriptRegistry registry;
+
+    protected EngineMap engines;
+    protected boolean quarantined;
+    protected Object result;
+
+    protected long allocatedBytes;
+    protected long cpuTime;
+
+    // System.nanoTime() at the boundaries of the stages
+    protected long submitted;
+    protected long started;
+    protected long prepared;
+    protected long evaluated;
+    protected long dispatched;
+
+    public Execution(final ScriptRegistry registry, final Command command, final MessageReceivedEvent event, final String args)
+    {
+        this.registry = registry;
+        this.command = command;
+        this.event = event;
+        this.args = args == null ? "" : args;
+        this.dependencies = registry.getDependencies(command);
+    }
+
+    /**
+     * The number of bytes the execution allocated on the heap, including all vars and methods it used.
+     *
+     * @return The number of bytes, {@code -1} if the jvm does not support measuring it
+     */
+    public long getAllocatedBytes()
+    {
+        return this.allocatedBytes;
+    }
+
+    public String getArgs()
+    {
+        return this.args;
+    }
+
+    public Command getCommand()
+    {
+        return this.command;
+    }
+
+    /**
+     * The cpu time the execution used, including all vars and methods it used.
+     *
+     * @return The cpu time in nanoseconds, {@code -1} if the jvm does not support measuring it
+     */
+    public long getCpuTime()
+    {
+        return this.cpuTime;
+    }
+
+    /**
+     * The time it took to hand the result over to JDA.
+     *
+     * @return The time in nanoseconds
+     */
+    public long getDispatchTime()
+    {
+        return this.dispatched - this.evaluated;
+    }
+
+    /**
+     * The time the command script ran.
+     *
+     * @return The time in nanoseconds
+     */
+    public long getEvaluationTime()
+    {
+        return this.evaluated - this.prepared;
+    }
+
+    /**
+     * The time it took to acquire the engines and to evaluate the methods and vars the command depends on.
+     *
+     * @return The time in nanoseconds
+     */
+    public long getPreparationTime()
+    {
+        return this.prepared - this.started;
+    }
+
+    /**
+     * The time the execution waited for a pool thread.
+     *
+     * @return The time in nanoseconds
+     */
+    public long getQueueWait()
+    {
+        return this.started - this.submitted;
+    }
+
+    public Dependencies getDependencies()
+    {
+        return this.dependencies;
+    }
+
+    public EngineMap getEngines()
+    {
+        return this.engines;
+    }
+
+    public MessageReceivedEvent getEvent()
+    {
+        return this.event;
+    }
+
+    public ScriptRegistry getRegistry()
+    {
+        return this.registry;
+    }
+
+    /**
+     * The result of the command, or the {@link Throwable} it failed with.
+     *
+     * @return The result, {@code null} until the command has been evaluated
+     */
+    public Object getResult()
+    {
+        return this.result;
+    }
+}
@@ -0,0 +1,674 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import io.github.jdaapplications.guildbot.GuildBot;
+import io.github.jdaapplications.guildbot.util.ThreadPool;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import javax.script.Bindings;
+import jdk.nashorn.api.scripting.JSObject;
+import org.hjson.JsonArray;
+import org.hjson.JsonObject;
+import org.hjson.JsonValue;
+
+/**
+ * The {@code global} binding of all scripts, a thread-safe map which survives restarts.
+ * <br>Values are kept in memory, every change marks its key as dirty and the dirty keys are appended to a log file every {@code flushInterval} seconds,
+ * so a counter which gets incremented a thousand times per second still only causes a single write per interval.
+ * Once the log holds considerably more records than there are entries, it gets rewritten with only the current values.
+ * <br>Only strings, numbers, booleans and lists or maps of those can be persisted, other values are kept in memory until the next restart.
+ * Lists, maps and js arrays are copied when they are stored, so a change of a stored value always goes through the store and gets persisted.
+ *
+ * @author Aljoscha Grebe
+ */
+public class GlobalStore
+{
+    public static final String SHARED = "";
+
+    protected final Path file;
+    protected final GuildBot guildBot;
+    protected final long maxEntries;
+    protected final Map<String, Namespace> namespaces;
+    protected final Map<Key, Boolean> dirty;
+
+    protected long records;
+
+    public GlobalStore(final GuildBot guildBot)
+    {
+        this.guildBot = guildBot;
+
+        final JsonObject config = guildBot.getConfig().get("store") == null
+                ? new JsonObject()
+                : guildBot.getConfig().get("store").asObject();
+
+        final String file = config.getString("file", "global.store.log");
+        this.file = file.isEmpty() ? null : Paths.get(file);
+        this.maxEntries = config.getLong("maxEntries", 10_000);
+
+        this.namespaces = new ConcurrentHashMap<>();
+        this.dirty = new ConcurrentHashMap<>();
+
+        if (this.file != null)
+        {
+            final long interval = TimeUnit.SECONDS.toMillis(config.getLong("flushInterval", 1));
+            guildBot.getThreadPool().getExecutor(ThreadPool.Priority.BACKGROUND).scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * The namespace with the given name, created on first use.
+     *
+     * @param  name
+     *         The name of the namespace, {@link #SHARED} for the namespace of all commands without a namespace of their own
+     *
+     * @return The namespace
+     */
+    public Namespace getNamespace(final String name)
+    {
+        return this.namespaces.computeIfAbsent(name, Namespace::new);
+    }
+
+    public Map<String, Namespace> getNamespaces()
+    {
+        return Collections.unmodifiableMap(this.namespaces);
+    }
+
+    public boolean isPersistent()
+    {
+        return this.file != null;
+    }
+
+    /**
+     * Reads the log file, later records of a key replace earlier ones.
+     * <br>Has to be called before any script uses the store, the log gets compacted right away if it grew too large.
+     */
+    public synchronized void load()
+    {
+        if (this.file == null || !Files.isReadable(this.file))
+            return;
+
+        final long start = System.nanoTime();
+        try (final BufferedReader reader = Files.newBufferedReader(this.file, StandardCharsets.UTF_8))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                if (line.isEmpty())
+                    continue;
+                this.records++;
+
+                final JsonObject record;
+                try
+                {
+                    record = JsonValue.readJSON(line).asObject();
+                }
+                catch (final RuntimeException e)
+                {
+                    // the last line may be incomplete if the bot got killed while writing it
+                    GuildBot.log.warn("Ignoring corrupt record in {}", this.file);
+                    continue;
+                }
+
+                final Map<String, Object> values = this.getNamespace(record.getString("n", GlobalStore.SHARED)).values;
+                final JsonValue value = record.get("v");
+                if (value == null || value.isNull())
+                    values.remove(record.getString("k", ""));
+                else
+                    values.put(record.getString("k", ""), GlobalStore.fromJson(value));
+            }
+            // the limit is not enforced for entries which have already been stored
+            this.namespaces.values().forEach(n -> n.size.set(n.values.size()));
+        }
+        catch (final IOException e)
+        {
+            GuildBot.log.error("An error occurred while reading the global store " + this.file, e);
+            return;
+        }
+
+        GuildBot.log.info("Loaded {} in {}ms", this, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (this.shouldCompact())
+            this.compact();
+    }
+
+    /**
+     * Appends all changed keys to the log file and compacts it if it grew too large.
+     */
+    public synchronized void flush()
+    {
+        if (this.file == null || this.dirty.isEmpty())
+            return;
+
+        final StringBuilder builder = new StringBuilder();
+        for (final Iterator<Key> iterator = this.dirty.keySet().iterator(); iterator.hasNext(); )
+        {
+            // the key has to be unmarked before its value is read, so a concurrent change marks it again and gets written next time
+            final Key key = iterator.next();
+            iterator.remove();
+
+            // a record without value removes the key, which is also written for values which can't be persisted,
+            // so an older value of the key doesn't come back after a restart
+            final JsonObject record = new JsonObject().add("n", key.namespace).add("k", key.name);
+            final JsonValue value = GlobalStore.toJson(this.getNamespace(key.namespace).values.get(key.name));
+            if (value != null && !value.isNull())
+                record.add("v", value);
+            builder.append(record.toString()).append('\n');
+            this.records++;
+        }
+
+        try (final Writer writer = Files.newBufferedWriter(this.file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND))
+        {
+            writer.write(builder.toString());
+        }
+        catch (final IOException e)
+        {
+            GuildBot.log.error("An error occurred while writing the global store " + this.file, e);
+        }
+
+        if (this.shouldCompact())
+            this.compact();
+    }
+
+    /**
+     * Rewrites the log file with a single record per entry, the previous file is replaced atomically where the file system supports it.
+     */
+    public synchronized void compact()
+    {
+        if (this.file == null)
+            return;
+
+        final Path temp = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        long records = 0;
+        try
+        {
+            try (final Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8))
+            {
+                for (final Namespace namespace : this.namespaces.values())
+                {
+                    for (final Map.Entry<String, Object> entry : namespace.values.entrySet())
+                    {
+                        final JsonValue json = GlobalStore.toJson(entry.getValue());
+                        if (json == null)
+                            continue;
+                        writer.write(new JsonObject().add("n", namespace.name).add("k", entry.getKey()).add("v", json).toString());
+                        writer.write('\n');
+                        records++;
+                    }
+                }
+            }
+            try
+            {
+                Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (final AtomicMoveNotSupportedException e)
+            {
+                Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            this.records = records;
+        }
+        catch (final IOException e)
+        {
+            GuildBot.log.error("An error occurred while compacting the global store " + this.file, e);
+        }
+    }
+
+    protected boolean shouldCompact()
+    {
+        long entries = 0;
+        for (final Namespace namespace : this.namespaces.values())
+            entries += namespace.values.size();
+        return this.records > 1000 && this.records > 2 * entries;
+    }
+
+    @Override
+    public String toString()
+    {
+        long entries = 0;
+        for (final Namespace namespace : this.namespaces.values())
+            entries += namespace.values.size();
+        return "GlobalStore[" + this.file + ", " + this.namespaces.size() + " namespaces, " + entries + " entries]";
+    }
+
+    protected static Object fromJson(final JsonValue json)
+    {
+        if (json.isString())
+            return json.asString();
+        if (json.isBoolean())
+            return json.asBoolean();
+        if (json.isNumber())
+        {
+            final double value = json.asDouble();
+            if (value == Math.rint(value) && Math.abs(value) < 1L << 53)
+                return value == (int) value ? (Object) (int) value : (Object) (long) value;
+            return value;
+        }
+        if (json.isArray())
+        {
+            final List<Object> list = new ArrayList<>();
+            json.asArray().forEach(v -> list.add(GlobalStore.fromJson(v)));
+            return Collections.unmodifiableList(list);
+        }
+        if (json.isObject())
+        {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            json.asObject().forEach(m -> map.put(m.getName(), GlobalStore.fromJson(m.getValue())));
+            return Collections.unmodifiableMap(map);
+        }
+        return null;
+    }
+
+    /**
+     * Copies the given value into one which can't be changed in place, lists and maps are copied deeply.
+     * <br>JS arrays are maps of their indices to java, they become lists so they are persisted and restored as arrays.
+     * Other values, e.g. strings, numbers or functions, are returned as they are.
+     *
+     * @param  value
+     *         The value
+     *
+     * @return The immutable copy
+     */
+    protected static Object snapshot(final Object value)
+    {
+        if (value instanceof JSObject && ((JSObject) value).isArray())
+        {
+            final JSObject array = (JSObject) value;
+            final int length = ((Number) array.getMember("length")).intValue();
+            final List<Object> list = new ArrayList<>(length);
+            for (int i = 0; i < length; i++)
+                list.add(GlobalStore.snapshot(array.getSlot(i)));
+            return Collections.unmodifiableList(list);
+        }
+        if (value instanceof JSObject && ((JSObject) value).isFunction())
+            return value;
+        if (value instanceof Collection)
+        {
+            final List<Object> list = new ArrayList<>(((Collection<?>) value).size());
+            ((Collection<?>) value).forEach(e -> list.add(GlobalStore.snapshot(e)));
+            return Collections.unmodifiableList(list);
+        }
+        if (value instanceof Map)
+        {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            ((Map<?, ?>) value).forEach((k, v) -> map.put(String.valueOf(k), GlobalStore.snapshot(v)));
+            return Collections.unmodifiableMap(map);
+        }
+        return value;
+    }
+
+    /**
+     * Converts the given value to json.
+     *
+     * @param  value
+     *         The value
+     *
+     * @return The json value, {@code null} if the value can't be persisted
+     */
+    protected static JsonValue toJson(final Object value)
+    {
+        if (value == null)
+            return JsonValue.NULL;
+        if (value instanceof CharSequence || value instanceof Character)
+            return JsonValue.valueOf(value.toString());
+        if (value instanceof Boolean)
+            return JsonValue.valueOf((Boolean) value);
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+            return JsonValue.valueOf(((Number) value).longValue());
+        if (value instanceof Number)
+            return JsonValue.valueOf(((Number) value).doubleValue());
+        if (value instanceof Collection)
+        {
+            final JsonArray array = new JsonArray();
+            for (final Object element : (Collection<?>) value)
+            {
+                final JsonValue json = GlobalStore.toJson(element);
+                if (json == null)
+                    return null;
+                array.add(json);
+            }
+            return array;
+        }
+        if (value instanceof Map)
+        {
+            final JsonObject object = new JsonObject();
+            for (final Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+            {
+                final JsonValue json = GlobalStore.toJson(entry.getValue());
+                if (json == null)
+                    return null;
+                object.add(String.valueOf(entry.getKey()), json);
+            }
+            return object;
+        }
+        return null;
+    }
+
+    protected static class Key
+    {
+        protected final String name;
+        protected final String namespace;
+
+        protected Key(final String namespace, final String name)
+        {
+            this.namespace = namespace;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(final Object obj)
+        {
+            if (!(obj instanceof Key))
+                return false;
+            final Key other = (Key) obj;
+            return this.namespace.equals(other.namespace) && this.name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * this.namespace.hashCode() + this.name.hashCode();
+        }
+    }
+
+    /**
+     * The entries of a single namespace, this is what scripts see as {@code global}.
+     * <br>All operations are atomic, {@code null} values are not stored, putting {@code null} removes the key instead.
+     * Values are stored as immutable {@link GlobalStore#snapshot(Object) snapshots}, a list or map which has been read from the namespace
+     * can't be changed in place but has to be put again, which is also what marks it to be written to the log.
+     * The views returned by {@link #keySet()}, {@link #values()} and {@link #entrySet()} are read-only.
+     */
+    public class Namespace implements Bindings
+    {
+        protected final String name;
+        protected final AtomicLong size;
+        protected final Map<String, Object> values;
+
+        protected Namespace(final String name)
+        {
+            this.name = name;
+            this.size = new AtomicLong();
+            this.values = new ConcurrentHashMap<>();
+        }
+
+        public String getName()
+        {
+            return this.name;
+        }
+
+        /**
+         * Another namespace of the same store, e.g. {@code global.namespace("")} for the shared namespace.
+         *
+         * @param  name
+         *         The name of the namespace
+         *
+         * @return The namespace
+         */
+        public Namespace namespace(final String name)
+        {
+            return GlobalStore.this.getNamespace(name);
+        }
+
+        /**
+         * Atomically adds the given delta to the number stored under the given key, a missing key counts as {@code 0}.
+         *
+         * @param  key
+         *         The key
+         * @param  delta
+         *         The delta
+         *
+         * @throws IllegalStateException
+         *         If the value is not a number or the namespace is full
+         *
+         * @return The new value
+         */
+        public long add(final String key, final long delta)
+        {
+            return (Long) this.compute(key, (k, v) ->
+            {
+                if (v != null && !(v instanceof Number))
+                    throw new IllegalStateException("The value of " + k + " is not a number");
+                return (v == null ? 0 : ((Number) v).longValue()) + delta;
+            });
+        }
+
+        public long increment(final String key)
+        {
+            return this.add(key, 1);
+        }
+
+        public long decrement(final String key)
+        {
+            return this.add(key, -1);
+        }
+
+        protected void changed(final Object key)
+        {
+            if (GlobalStore.this.file != null)
+                GlobalStore.this.dirty.put(new Key(this.name, (String) key), Boolean.TRUE);
+        }
+
+        /**
+         * Atomically replaces the value of the given key with the result of the given function, every change of the namespace goes through here.
+         * <br>The result is stored as {@link GlobalStore#snapshot(Object) snapshot}, a key which gets created counts against {@code maxEntries}
+         * inside of the same step, so concurrent scripts can't exceed the limit together.
+         *
+         * @param  key
+         *         The key
+         * @param  function
+         *         The function computing the new value from the key and the current value, returning {@code null} removes the key
+         *
+         * @throws IllegalStateException
+         *         If the key would be created while the namespace is full
+         *
+         * @return The new value
+         */
+        protected Object update(final String key, final BiFunction<? super String, ? super Object, ?> function)
+        {
+            final boolean[] changed = new boolean[1];
+            final Object value = this.values.compute(key, (k, v) ->
+            {
+                final Object result = function.apply(k, v);
+                if (result == v)
+                    return v;
+
+                final Object snapshot = GlobalStore.snapshot(result);
+                if (v == null && this.size.incrementAndGet() > GlobalStore.this.maxEntries)
+                {
+                    this.size.decrementAndGet();
+                    throw new IllegalStateException("The namespace \"" + this.name + "\" of the global store is full");
+                }
+                if (snapshot == null)
+                    this.size.decrementAndGet();
+                changed[0] = true;
+                return snapshot;
+            });
+
+            // marked after the value has been stored, so a flush in between can't write the old value and forget the new one
+            if (changed[0])
+                this.changed(key);
+            return value;
+        }
+
+        @Override
+        public Object put(final String key, final Object value)
+        {
+            final Object[] previous = new Object[1];
+            this.update(key, (k, v) ->
+            {
+                previous[0] = v;
+                return value;
+            });
+            return previous[0];
+        }
+
+        @Override
+        public void putAll(final Map<? extends String, ?> map)
+        {
+            map.forEach(this::put);
+        }
+
+        @Override
+        public void clear()
+        {
+            this.values.keySet().forEach(this::remove);
+        }
+
+        @Override
+        public Set<String> keySet()
+        {
+            return Collections.unmodifiableSet(this.values.keySet());
+        }
+
+        @Override
+        public Collection<Object> values()
+        {
+            return Collections.unmodifiableCollection(this.values.values());
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet()
+        {
+            return Collections.unmodifiableMap(this.values).entrySet();
+        }
+
+        @Override
+        public int size()
+        {
+            return this.values.size();
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return this.values.isEmpty();
+        }
+
+        @Override
+        public boolean containsKey(final Object key)
+        {
+            return this.values.containsKey(key);
+        }
+
+        @Override
+        public boolean containsValue(final Object value)
+        {
+            return this.values.containsValue(value);
+        }
+
+        @Override
+        public Object get(final Object key)
+        {
+            return this.values.get(key);
+        }
+
+        @Override
+        public Object remove(final Object key)
+        {
+            return key instanceof String ? this.put((String) key, null) : null;
+        }
+
+        @Override
+        public boolean remove(final Object key, final Object value)
+        {
+            if (!(key instanceof String) || value == null)
+                return false;
+            final boolean[] removed = new boolean[1];
+            this.update((String) key, (k, v) ->
+            {
+                removed[0] = value.equals(v);
+                return removed[0] ? null : v;
+            });
+            return removed[0];
+        }
+
+        @Override
+        public Object putIfAbsent(final String key, final Object value)
+        {
+            final Object[] previous = new Object[1];
+            this.update(key, (k, v) ->
+            {
+                previous[0] = v;
+                return v == null ? value : v;
+            });
+            return previous[0];
+        }
+
+        @Override
+        public boolean replace(final String key, final Object oldValue, final Object newValue)
+        {
+            final boolean[] replaced = new boolean[1];
+            this.update(key, (k, v) ->
+            {
+                replaced[0] = v != null && v.equals(oldValue);
+                return replaced[0] ? newValue : v;
+            });
+            return replaced[0];
+        }
+
+        @Override
+        public Object replace(final String key, final Object value)
+        {
+            final Object[] previous = new Object[1];
+            this.update(key, (k, v) ->
+            {
+                previous[0] = v;
+                return v == null ? null : value;
+            });
+            return previous[0];
+        }
+
+        @Override
+        public void replaceAll(final BiFunction<? super String, ? super Object, ?> function)
+        {
+            this.values.keySet().forEach(k -> this.computeIfPresent(k, function));
+        }
+
+        @Override
+        public Object compute(final String key, final BiFunction<? super String, ? super Object, ?> function)
+        {
+            return this.update(key, function);
+        }
+
+        @Override
+        public Object computeIfAbsent(final String key, final Function<? super String, ?> function)
+        {
+            return this.update(key, (k, v) -> v == null ? function.apply(k) : v);
+        }
+
+        @Override
+        public Object computeIfPresent(final String key, final BiFunction<? super String, ? super Object, ?> function)
+        {
+            return this.update(key, (k, v) -> v == null ? null : function.apply(k, v));
+        }
+
+        @Override
+        public Object merge(final String key, final Object value, final BiFunction<? super Object, ? super Object, ?> function)
+        {
+            return this.update(key, (k, v) -> v == null ? value : function.apply(v, value));
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.values.toString();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovySystem;
+import io.github.jdaapplications.guildbot.util.ScriptUtils;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+/**
+ * The classes of all compiled groovy scripts, keyed by the hash of their source.
+ * <br>Recompiling a script which did not change, e.g. during a reload, returns the class compiled before instead of defining a new one.
+ * Every class gets its own class loader, so a class which has been evicted can be unloaded once no command uses it anymore
+ * and the metaspace used by groovy stays bounded by the number of cached and live scripts instead of growing with every reload.
+ * <br>Statically compiled scripts are cached separately from dynamic ones, as the same source compiles to a different class.
+ *
+ * @author Aljoscha Grebe
+ */
+public class GroovyClassCache
+{
+    protected final Map<String, CachedClass> classes;
+    protected final CompilerConfiguration configuration;
+    protected final CompilerConfiguration staticConfiguration;
+    protected final AtomicLong evictions;
+    protected final AtomicLong hits;
+    protected final AtomicLong misses;
+    protected final ClassLoader parent;
+
+    protected volatile int maxSize;
+
+    public GroovyClassCache(final ClassLoader parent, final CompilerConfiguration configuration, final CompilerConfiguration staticConfiguration, final int maxSize)
+    {
+        this.parent = parent;
+        this.configuration = configuration;
+        this.staticConfiguration = staticConfiguration;
+        this.maxSize = maxSize;
+
+        this.hits = new AtomicLong(0);
+        this.misses = new AtomicLong(0);
+        this.evictions = new AtomicLong(0);
+
+        // access order turns the map into an lru cache, only compilations touch it so a single lock is fine
+        this.classes = new LinkedHashMap<String, CachedClass>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CachedClass> eldest)
+            {
+                if (this.size() <= GroovyClassCache.this.maxSize)
+                    return false;
+                GroovyClassCache.this.evict(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the class of the given script, compiling it if it is not cached.
+     *
+     * @param  script
+     *         The source of the script
+     * @param  compileStatic
+     *         Whether the script should be compiled statically
+     *
+     * @throws CompilationFailedException
+     *         If the script could not be compiled
+     *
+     * @return The class of the script
+     */
+    public Class<?> get(final String script, final boolean compileStatic)
+    {
+        final String hash = (compileStatic ? "static:" : "") + ScriptUtils.hash(script);
+        return ClassCaches.lookup(this.classes, hash, this.hits, this.misses, () ->
+        {
+            final GroovyClassLoader loader = new GroovyClassLoader(this.parent, compileStatic ? this.staticConfiguration : this.configuration);
+            return new CachedClass(loader, loader.parseClass(script));
+        }).scriptClass;
+    }
+
+    public long getEvictions()
+    {
+        return this.evictions.get();
+    }
+
+    public long getHits()
+    {
+        return this.hits.get();
+    }
+
+    public int getMaxSize()
+    {
+        return this.maxSize;
+    }
+
+    public long getMisses()
+    {
+        return this.misses.get();
+    }
+
+    public int getSize()
+    {
+        synchronized (this.classes)
+        {
+            return this.classes.size();
+        }
+    }
+
+    /**
+     * Changes the maximum number of cached classes, the least recently used classes get evicted once the cache grows beyond it.
+     *
+     * @param maxSize
+     *        The maximum number of classes
+     */
+    public void setMaxSize(final int maxSize)
+    {
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    protected void evict(final CachedClass entry)
+    {
+        this.evictions.incrementAndGet();
+        // groovy keeps the meta class of every class it has seen, which would keep the class and its loader reachable
+        GroovySystem.getMetaClassRegistry().removeMetaClass(entry.scriptClass);
+        InvokerHelper.removeClass(entry.scriptClass);
+        entry.loader.clearCache();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "GroovyClassCache[" + this.getSize() + "/" + this.maxSize + " classes, " + this.hits.get() + " hits, " + this.misses.get() + " misses, " + this.evictions.get() + " evictions]";
+    }
+
+    protected static class CachedClass
+    {
+        protected final GroovyClassLoader loader;
+        protected final Class<?> scriptClass;
+
+        protected CachedClass(final GroovyClassLoader loader, final Class<?> scriptClass)
+        {
+            this.loader = loader;
+            this.scriptClass = scriptClass;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import io.github.jdaapplications.guildbot.util.ScriptUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.script.ScriptException;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * The classes of all compiled java scripts, keyed by the hash of their source.
+ * <br>Scripts are compiled in memory by the {@link JavaCompiler} of the jdk the bot runs on, nothing gets written to disk.
+ * Like the {@link GroovyClassCache} every script gets its own class loader, so evicted classes can be unloaded once no command uses them anymore.
+ *
+ * @author Aljoscha Grebe
+ */
+public class JavaClassCache
+{
+    protected final Map<String, CachedClass> classes;
+    protected final AtomicLong evictions;
+    protected final AtomicLong hits;
+    protected final AtomicLong misses;
+    protected final List<String> options;
+    protected final ClassLoader parent;
+
+    protected volatile int maxSize;
+
+    public JavaClassCache(final ClassLoader parent, final int maxSize)
+    {
+        this.parent = parent;
+        this.maxSize = maxSize;
+
+        // the scripts see the same classes as the bot, annotation processors would only slow down the compilation
+        this.options = Collections.unmodifiableList(Arrays.asList("-classpath", System.getProperty("java.class.path"), "-proc:none", "-g"));
+
+        this.hits = new AtomicLong(0);
+        this.misses = new AtomicLong(0);
+        this.evictions = new AtomicLong(0);
+
+        this.classes = new LinkedHashMap<String, CachedClass>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CachedClass> eldest)
+            {
+                if (this.size() <= JavaClassCache.this.maxSize)
+                    return false;
+                JavaClassCache.this.evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the class of the given source, compiling it if it is not cached.
+     *
+     * @param  className
+     *         The fully qualified name of the class declared by the source
+     * @param  source
+     *         The source of a single compilation unit
+     *
+     * @throws ScriptException
+     *         If the source could not be compiled or no compiler is available
+     *
+     * @return The class declared by the source
+     */
+    public Class<?> get(final String className, final String source) throws ScriptException
+    {
+        return ClassCaches.lookup(this.classes, ScriptUtils.hash(source), this.hits, this.misses, () ->
+        {
+            final Map<String, byte[]> bytecode = this.compile(className, source);
+            try
+            {
+                return new CachedClass(bytecode, new BytecodeClassLoader(this.parent, bytecode).loadClass(className));
+            }
+            catch (final ClassNotFoundException e)
+            {
+                throw new ScriptException("The script does not declare the class " + className);
+            }
+        }).scriptClass;
+    }
+
+    public long getEvictions()
+    {
+        return this.evictions.get();
+    }
+
+    public long getHits()
+    {
+        return this.hits.get();
+    }
+
+    public int getMaxSize()
+    {
+        return this.maxSize;
+    }
+
+    public long getMisses()
+    {
+        return this.misses.get();
+    }
+
+    public int getSize()
+    {
+        synchronized (this.classes)
+        {
+            return this.classes.size();
+        }
+    }
+
+    /**
+     * Changes the maximum number of cached classes, the least recently used classes get evicted once the cache grows beyond it.
+     *
+     * @param maxSize
+     *        The maximum number of classes
+     */
+    public void setMaxSize(final int maxSize)
+    {
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    protected Map<String, byte[]> compile(final String className, final String source) throws ScriptException
+    {
+        // only a jdk ships a compiler, a jre returns null
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null)
+            throw new ScriptException("Java scripts can only be compiled if the bot runs on a JDK");
+
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final JavaFileObject sourceFile = new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE)
+        {
+            @Override
+            public CharSequence getCharContent(final boolean ignoreEncodingErrors)
+            {
+                return source;
+            }
+        };
+
+        try (final MemoryFileManager fileManager = new MemoryFileManager(compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)))
+        {
+            final boolean success = compiler.getTask(null, fileManager, diagnostics, this.options, null, Collections.singletonList(sourceFile)).call();
+            if (!success)
+                throw new ScriptException(diagnostics.getDiagnostics().stream()
+                        .filter(d -> d.getKind() == Diagnostic.Kind.ERROR)
+                        .map(d -> String.format("line %d: %s", d.getLineNumber(), d.getMessage(null)))
+                        .collect(Collectors.joining("\n")));
+
+            return fileManager.getBytecode();
+        }
+        catch (final IOException e)
+        {
+            throw new ScriptException(e);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "JavaClassCache[" + this.getSize() + "/" + this.maxSize + " classes, " + this.hits.get() + " hits, " + this.misses.get() + " misses, " + this.evictions.get() + " evictions]";
+    }
+
+    /**
+     * Defines the classes of a single script, including its nested and anonymous classes.
+     */
+    protected static class BytecodeClassLoader extends ClassLoader
+    {
+        protected final Map<String, byte[]> bytecode;
+
+        protected BytecodeClassLoader(final ClassLoader parent, final Map<String, byte[]> bytecode)
+        {
+            super(parent);
+            this.bytecode = bytecode;
+        }
+
+        @Override
+        protected Class<?> findClass(final String name) throws ClassNotFoundException
+        {
+            final byte[] bytes = this.bytecode.get(name);
+            if (bytes == null)
+                throw new ClassNotFoundException(name);
+            return this.defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    protected static class CachedClass
+    {
+        protected final Map<String, byte[]> bytecode;
+        protected final Class<?> scriptClass;
+
+        protected CachedClass(final Map<String, byte[]> bytecode, final Class<?> scriptClass)
+        {
+            this.bytecode = bytecode;
+            this.scriptClass = scriptClass;
+        }
+    }
+
+    /**
+     * Keeps the class files written by the compiler in memory instead of writing them to disk.
+     */
+    protected static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager>
+    {
+        protected final Map<String, ByteArrayOutputStream> outputs;
+
+        protected MemoryFileManager(final StandardJavaFileManager fileManager)
+        {
+            super(fileManager);
+            this.outputs = new HashMap<>();
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(final Location location, final String className, final JavaFileObject.Kind kind, final FileObject sibling)
+        {
+            return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind)
+            {
+                @Override
+                public OutputStream openOutputStream()
+                {
+                    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+                    MemoryFileManager.this.outputs.put(className, output);
+                    return output;
+                }
+            };
+        }
+
+        protected Map<String, byte[]> getBytecode()
+        {
+            final Map<String, byte[]> bytecode = new HashMap<>(this.outputs.size());
+            this.outputs.forEach((name, output) -> bytecode.put(name, output.toByteArray()));
+            return Collections.unmodifiableMap(bytecode);
+        }
+    }
+}
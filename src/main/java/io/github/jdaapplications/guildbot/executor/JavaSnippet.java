@@ -0,0 +1,97 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import io.github.jdaapplications.guildbot.GuildBot;
+import java.util.concurrent.CancellationException;
+import javax.script.ScriptContext;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+
+/**
+ * The base class of every script written in java, the script becomes the body of {@link #run()}.
+ * <br>The usual bindings are available as typed fields, everything else, e.g. the values defined by vars, can be read with {@link #get(String)}.
+ * A new instance is created for every evaluation, so its fields never hold the bindings of another execution.
+ *
+ * @author Aljoscha Grebe
+ */
+public abstract class JavaSnippet
+{
+    protected String args;
+    protected ScriptContext context;
+    protected MessageReceivedEvent event;
+    protected GlobalStore.Namespace global;
+    protected GuildBot guildBot;
+
+    /**
+     * Binds this instance to the given context and runs the script.
+     *
+     * @param  context
+     *         The context to evaluate the script in
+     *
+     * @throws Exception
+     *         If the script threw an exception
+     *
+     * @return The value returned by the script, {@code null} if it returned nothing
+     */
+    public Object eval(final ScriptContext context) throws Exception
+    {
+        this.context = context;
+        this.args = this.get("args", String.class);
+        this.event = this.get("event", MessageReceivedEvent.class);
+        this.global = this.get("global", GlobalStore.Namespace.class);
+        this.guildBot = this.get("guildBot", GuildBot.class);
+        return this.run();
+    }
+
+    /**
+     * The value of the given binding, the bindings of the engine scope shadow the ones of the global scope.
+     *
+     * @param  name
+     *         The name of the binding
+     *
+     * @return The value or {@code null} if there is no such binding
+     */
+    protected Object get(final String name)
+    {
+        return this.context.getAttribute(name);
+    }
+
+    /**
+     * The value of the given binding if it has the given type, see {@link ScriptBindings#cast(Object, Class)}.
+     */
+    protected <T> T get(final String name, final Class<T> type)
+    {
+        return ScriptBindings.cast(this.get(name), type);
+    }
+
+    /**
+     * Invokes the given method, see {@link ScriptBindings#invoke(Object, String, Object...)}.
+     */
+    protected Object invoke(final String name, final Object... args)
+    {
+        return ScriptBindings.invoke(this.get(name), name, args);
+    }
+
+    protected abstract Object run() throws Exception;
+
+    /**
+     * Inserted into every loop of a script by {@link Engine#JAVA}, so the script stops once its thread gets interrupted.
+     * <br>Loops inside of lambdas can't throw checked exceptions, so the interrupt is reported as unchecked exception.
+     */
+    protected static void checkInterrupt()
+    {
+        if (Thread.interrupted())
+            throw new CancellationException("The script has been interrupted");
+    }
+
+    /**
+     * Adds a binding to the engine scope, so scripts which run after this one can use it, e.g. the values defined by vars.
+     *
+     * @param name
+     *        The name of the binding
+     * @param value
+     *        The value
+     */
+    protected void set(final String name, final Object value)
+    {
+        this.context.setAttribute(name, value, ScriptContext.ENGINE_SCOPE);
+    }
+}
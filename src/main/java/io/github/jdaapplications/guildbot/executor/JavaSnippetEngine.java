@@ -0,0 +1,54 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.stream.Collectors;
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+/**
+ * The engine of java scripts, it holds no state of its own since every {@link JavaSnippet} gets all it needs from its context.
+ * <br>Only exists so java has an entry in every {@link EngineMap} like the other languages, scripts are compiled by {@link Engine#JAVA}.
+ *
+ * @author Aljoscha Grebe
+ */
+public class JavaSnippetEngine extends AbstractScriptEngine
+{
+    @Override
+    public Bindings createBindings()
+    {
+        return new SimpleBindings();
+    }
+
+    @Override
+    public Object eval(final String script, final ScriptContext context) throws ScriptException
+    {
+        // like the other engines this takes a script, not a whole class
+        return Engine.JAVA.compile(Engine.JAVA.getScript(script, Collections.emptyList())).eval(this, context);
+    }
+
+    @Override
+    public Object eval(final Reader reader, final ScriptContext context) throws ScriptException
+    {
+        try (final BufferedReader buffered = new BufferedReader(reader))
+        {
+            return this.eval(buffered.lines().collect(Collectors.joining("\n")), context);
+        }
+        catch (final IOException e)
+        {
+            throw new ScriptException(e);
+        }
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory()
+    {
+        return null;
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+/**
+ * A script which has been compiled once by {@link Engine#compile(String)} and can be evaluated any number of times.
+ *
+ * @author Aljoscha Grebe
+ */
+@FunctionalInterface
+public interface PreparedScript
+{
+    /**
+     * Evaluates this script.
+     *
+     * @param  engine
+     *         An engine of the {@link Engine} this script has been compiled for, used by engines which can't compile scripts
+     * @param  context
+     *         The context to evaluate this script in
+     *
+     * @throws ScriptException
+     *         If the script threw an error
+     *
+     * @return The result of the script
+     */
+    Object eval(ScriptEngine engine, ScriptContext context) throws ScriptException;
+}
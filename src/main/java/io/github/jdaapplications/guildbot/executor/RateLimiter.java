@@ -0,0 +1,200 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import io.github.jdaapplications.guildbot.GuildBot;
+import io.github.jdaapplications.guildbot.executor.executable.Command;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Enforces the {@link RateLimits} of all commands before an execution gets submitted.
+ * <br>Every bucket is a single {@link AtomicLong} updated by compare and swap and the buckets are looked up in concurrent maps,
+ * so checking them never blocks the event thread and executions of different commands or users never contend.
+ * Buckets which have been refilled completely carry no state and are evicted every minute.
+ *
+ * @author Aljoscha Grebe
+ */
+public class RateLimiter
+{
+    // a user who keeps getting rejected only gets told so once per interval and channel
+    protected static final RateLimits.Rate NOTIFICATION_RATE = new RateLimits.Rate(1, TimeUnit.SECONDS.toNanos(5));
+
+    protected final Map<Long, State> commands;
+    protected final Map<Long, Bucket> notifications;
+
+    public RateLimiter(final GuildBot guildBot)
+    {
+        this.commands = new ConcurrentHashMap<>();
+        this.notifications = new ConcurrentHashMap<>();
+
+        guildBot.getThreadPool().scheduleWithFixedDelay(this::evict, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Takes an invocation of the given command from all of its buckets and a slot of its bulkhead.
+     * <br>The buckets are checked from the narrowest to the widest, so a user who exceeds their own limit doesn't use up the limit of the channel or command.
+     * An invocation rejected by a wider bucket gives its token back to the narrower ones, so nobody gets charged for an invocation which never ran.
+     * An invocation which has been allowed has to be given back to {@link #release(Command)} once the execution finished.
+     *
+     * @param  command
+     *         The command to invoke
+     * @param  channelId
+     *         The id of the channel the command has been invoked in
+     * @param  userId
+     *         The id of the user who invoked the command
+     *
+     * @return {@code null} if the invocation is allowed, otherwise the reason it has been rejected
+     */
+    public String tryAcquire(final Command command, final long channelId, final long userId)
+    {
+        final RateLimits limits = command.getRateLimits();
+        final State state = this.commands.computeIfAbsent(command.getChannelId(), id -> new State());
+
+        // running executions are counted even without a limit, so a reload which changes the limit can't unbalance the count
+        final int maxConcurrency = limits.getMaxConcurrency();
+        if (state.running.incrementAndGet() > maxConcurrency && maxConcurrency > 0)
+        {
+            state.running.decrementAndGet();
+            return String.format("This command is already running %d times, please try again later", maxConcurrency);
+        }
+
+        final long now = System.nanoTime();
+        final Bucket user = RateLimiter.getBucket(state.users, userId, limits.getUser(), now);
+        final Bucket channel = RateLimiter.getBucket(state.channels, channelId, limits.getChannel(), now);
+        final Bucket all = limits.getCommand().isLimited() ? state.command : null;
+
+        long wait = user == null ? 0 : user.tryAcquire(limits.getUser(), now);
+        if (wait == 0 && channel != null)
+        {
+            wait = channel.tryAcquire(limits.getChannel(), now);
+            if (wait != 0 && user != null)
+                user.refund(limits.getUser());
+        }
+        if (wait == 0 && all != null)
+        {
+            wait = all.tryAcquire(limits.getCommand(), now);
+            if (wait != 0)
+            {
+                if (user != null)
+                    user.refund(limits.getUser());
+                if (channel != null)
+                    channel.refund(limits.getChannel());
+            }
+        }
+
+        if (wait == 0)
+            return null;
+
+        state.running.decrementAndGet();
+        return String.format("This command is used too often, please try again in %.1f seconds", wait / 1_000_000_000.0);
+    }
+
+    /**
+     * Whether the rejection of an invocation should be replied to, at most one reply is sent every five seconds per channel.
+     *
+     * @param  channelId
+     *         The id of the channel the command has been invoked in
+     *
+     * @return {@code true} if a reply may be sent
+     */
+    public boolean shouldNotify(final long channelId)
+    {
+        final long now = System.nanoTime();
+        return RateLimiter.getBucket(this.notifications, channelId, RateLimiter.NOTIFICATION_RATE, now).tryAcquire(RateLimiter.NOTIFICATION_RATE, now) == 0;
+    }
+
+    /**
+     * Frees the slot of the bulkhead taken by {@link #tryAcquire(Command, long, long)}.
+     *
+     * @param command
+     *        The command which finished
+     */
+    public void release(final Command command)
+    {
+        final State state = this.commands.get(command.getChannelId());
+        if (state != null)
+            state.running.decrementAndGet();
+    }
+
+    protected void evict()
+    {
+        final long now = System.nanoTime();
+        // a bucket which gets used between the check and its removal loses that invocation, which only ever errs in favour of the user
+        this.commands.values().forEach(s ->
+        {
+            s.users.values().removeIf(b -> b.isFull(now));
+            s.channels.values().removeIf(b -> b.isFull(now));
+        });
+        this.notifications.values().removeIf(b -> b.isFull(now));
+    }
+
+    protected static Bucket getBucket(final Map<Long, Bucket> buckets, final long key, final RateLimits.Rate rate, final long now)
+    {
+        return rate.isLimited() ? buckets.computeIfAbsent(key, k -> new Bucket(now)) : null;
+    }
+
+    /**
+     * A token bucket stored as the time at which it will be full again (the generic cell rate algorithm),
+     * the rate is passed in on every call so changes of the topic take effect without resetting the bucket.
+     */
+    protected static class Bucket
+    {
+        protected final AtomicLong fullAt;
+
+        protected Bucket(final long now)
+        {
+            this.fullAt = new AtomicLong(now);
+        }
+
+        protected boolean isFull(final long now)
+        {
+            return this.fullAt.get() - now <= 0;
+        }
+
+        /**
+         * Gives back an invocation taken by {@link #tryAcquire(RateLimits.Rate, long)}.
+         * <br>A bucket which refilled in the meantime ends up in the past, which counts as full just like the present.
+         *
+         * @param rate
+         *        The rate the invocation has been taken with
+         */
+        protected void refund(final RateLimits.Rate rate)
+        {
+            this.fullAt.addAndGet(-rate.interval);
+        }
+
+        /**
+         * Takes a single invocation from the bucket.
+         *
+         * @param  rate
+         *         The current rate of the bucket
+         * @param  now
+         *         The current {@link System#nanoTime()}
+         *
+         * @return {@code 0} if the invocation has been taken, otherwise the time in nanoseconds until it becomes available
+         */
+        protected long tryAcquire(final RateLimits.Rate rate, final long now)
+        {
+            final long capacity = rate.interval * rate.limit;
+            while (true)
+            {
+                final long fullAt = this.fullAt.get();
+                final long next = (fullAt - now > 0 ? fullAt : now) + rate.interval;
+                if (next - now > capacity)
+                    return next - now - capacity;
+                if (this.fullAt.compareAndSet(fullAt, next))
+                    return 0;
+            }
+        }
+    }
+
+    protected static class State
+    {
+        protected final Map<Long, Bucket> channels = new ConcurrentHashMap<>();
+        protected final Bucket command = new Bucket(System.nanoTime());
+        protected final AtomicInteger running = new AtomicInteger(0);
+        protected final Map<Long, Bucket> users = new ConcurrentHashMap<>();
+    }
+}
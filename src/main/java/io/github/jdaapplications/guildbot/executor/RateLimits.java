@@ -0,0 +1,150 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import java.util.concurrent.TimeUnit;
+import org.hjson.JsonObject;
+import org.hjson.JsonValue;
+
+/**
+ * How often and how many times at once a command may run, read from the channel topic with the bot config as fallback.
+ *
+ * @author Aljoscha Grebe
+ */
+public class RateLimits
+{
+    protected final Rate channel;
+    protected final Rate command;
+    protected final int maxConcurrency;
+    protected final Rate user;
+
+    protected RateLimits(final Rate user, final Rate channel, final Rate command, final int maxConcurrency)
+    {
+        this.user = user;
+        this.channel = channel;
+        this.command = command;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public static RateLimits of(final JsonObject config, final JsonObject defaults)
+    {
+        final JsonValue value = config.get("rateLimit");
+        final JsonValue defaultValue = defaults.get("rateLimit");
+        final JsonObject limits = value == null ? new JsonObject() : value.asObject();
+        final JsonObject defaultLimits = defaultValue == null ? new JsonObject() : defaultValue.asObject();
+
+        return new RateLimits(Rate.of(limits, defaultLimits, "user"), Rate.of(limits, defaultLimits, "channel"), Rate.of(limits, defaultLimits, "command"),
+                Math.max(0, config.getInt("maxConcurrency", defaults.getInt("maxConcurrency", 0))));
+    }
+
+    /**
+     * How often the command may run in a single channel, regardless of who invokes it.
+     *
+     * @return The rate
+     */
+    public Rate getChannel()
+    {
+        return this.channel;
+    }
+
+    /**
+     * How often the command may run in total.
+     *
+     * @return The rate
+     */
+    public Rate getCommand()
+    {
+        return this.command;
+    }
+
+    /**
+     * The number of executions of the command which may run at the same time.
+     *
+     * @return The number of executions, {@code 0} if it is not limited
+     */
+    public int getMaxConcurrency()
+    {
+        return this.maxConcurrency;
+    }
+
+    /**
+     * How often a single user may run the command.
+     *
+     * @return The rate
+     */
+    public Rate getUser()
+    {
+        return this.user;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RateLimits[user=" + this.user + ", channel=" + this.channel + ", command=" + this.command + ", maxConcurrency=" + this.maxConcurrency + "]";
+    }
+
+    /**
+     * A number of invocations per period, e.g. {@code { limit: 3, period: 10 }} for three invocations per ten seconds.
+     * <br>All of them may be used at once, after that a new one becomes available every {@code period / limit} seconds.
+     */
+    public static class Rate
+    {
+        public static final Rate UNLIMITED = new Rate(0, 0);
+
+        protected final long interval;
+        protected final int limit;
+
+        protected Rate(final int limit, final long interval)
+        {
+            this.limit = limit;
+            this.interval = interval;
+        }
+
+        protected static Rate of(final JsonObject config, final JsonObject defaults, final String name)
+        {
+            final JsonValue value = config.get(name) == null ? defaults.get(name) : config.get(name);
+            if (value == null)
+                return Rate.UNLIMITED;
+
+            final JsonObject rate = value.asObject();
+            final int limit = rate.getInt("limit", 0);
+            final double period = rate.getDouble("period", 0);
+            if (limit <= 0 || period <= 0)
+                return Rate.UNLIMITED;
+
+            return new Rate(limit, (long) (period * 1_000_000_000L / limit));
+        }
+
+        /**
+         * The time after which a single invocation becomes available again.
+         *
+         * @param  unit
+         *         The unit of the returned value
+         *
+         * @return The interval
+         */
+        public long getInterval(final TimeUnit unit)
+        {
+            return unit.convert(this.interval, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * The number of invocations per period, which is also the number of invocations which may happen at once.
+         *
+         * @return The number of invocations, {@code 0} if it is not limited
+         */
+        public int getLimit()
+        {
+            return this.limit;
+        }
+
+        public boolean isLimited()
+        {
+            return this.limit > 0;
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.isLimited() ? this.limit + "/" + TimeUnit.NANOSECONDS.toMillis(this.interval * this.limit) + "ms" : "unlimited";
+        }
+    }
+}
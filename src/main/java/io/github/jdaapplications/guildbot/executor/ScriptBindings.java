@@ -0,0 +1,49 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import io.github.jdaapplications.guildbot.executor.executable.Method;
+
+/**
+ * The helpers which the base classes of compiled scripts, {@link TypedGroovyScript} and {@link JavaSnippet}, offer to their scripts.
+ * <br>The base classes only differ in how they read and write a single binding, everything built on top of that lives here.
+ *
+ * @author Aljoscha Grebe
+ */
+public class ScriptBindings
+{
+    /**
+     * The value of a binding if it has the given type.
+     *
+     * @param  value
+     *         The value of the binding, {@code null} if there is no such binding
+     * @param  type
+     *         The expected type of the value
+     *
+     * @return The value or {@code null} if there is no such binding or it has another type
+     */
+    public static <T> T cast(final Object value, final Class<T> type)
+    {
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+
+    /**
+     * Invokes a method, i.e. the script of a {@code mthd-} channel, which has to be a dependency of the executable running the script.
+     *
+     * @param  method
+     *         The value of the binding of the method
+     * @param  name
+     *         The name of the method
+     * @param  args
+     *         The arguments of the method
+     *
+     * @throws IllegalArgumentException
+     *         If there is no such method
+     *
+     * @return The value returned by the method
+     */
+    public static Object invoke(final Object method, final String name, final Object... args)
+    {
+        if (!(method instanceof Method.InvokeableMethod))
+            throw new IllegalArgumentException("There is no method named " + name);
+        return ((Method.InvokeableMethod) method).invoke(args);
+    }
+}
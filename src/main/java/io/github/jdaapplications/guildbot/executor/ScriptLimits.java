@@ -0,0 +1,74 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import java.util.concurrent.TimeUnit;
+import org.hjson.JsonObject;
+
+/**
+ * The resources a single script may use, read from the channel topic with the bot config as fallback.
+ *
+ * @author Aljoscha Grebe
+ */
+public class ScriptLimits
+{
+    protected final long cpuTime;
+    protected final long maxAllocation;
+    protected final long timeout;
+
+    protected ScriptLimits(final long timeout, final long cpuTime, final long maxAllocation)
+    {
+        this.timeout = timeout;
+        this.cpuTime = cpuTime;
+        this.maxAllocation = maxAllocation;
+    }
+
+    public static ScriptLimits of(final JsonObject config, final JsonObject defaults)
+    {
+        final double timeout = config.getDouble("timeout", defaults.getDouble("timeout", 5));
+        final double cpuTime = config.getDouble("cpuTime", defaults.getDouble("cpuTime", 0));
+        final double maxAllocation = config.getDouble("maxAllocation", defaults.getDouble("maxAllocation", 0));
+
+        return new ScriptLimits((long) (timeout * 1_000_000_000L), (long) (cpuTime * 1_000_000_000L), (long) (maxAllocation * 1024 * 1024));
+    }
+
+    /**
+     * The cpu time the script may use.
+     *
+     * @param  unit
+     *         The unit of the returned value
+     *
+     * @return The cpu time, {@code 0} if it is not limited
+     */
+    public long getCpuTime(final TimeUnit unit)
+    {
+        return unit.convert(this.cpuTime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The number of bytes the script may allocate on the heap.
+     *
+     * @return The number of bytes, {@code 0} if it is not limited
+     */
+    public long getMaxAllocation()
+    {
+        return this.maxAllocation;
+    }
+
+    /**
+     * The wall time after which the script gets interrupted.
+     *
+     * @param  unit
+     *         The unit of the returned value
+     *
+     * @return The timeout
+     */
+    public long getTimeout(final TimeUnit unit)
+    {
+        return unit.convert(this.timeout, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ScriptLimits[timeout=" + TimeUnit.NANOSECONDS.toMillis(this.timeout) + "ms, cpuTime=" + TimeUnit.NANOSECONDS.toMillis(this.cpuTime) + "ms, maxAllocation=" + this.maxAllocation + "B]";
+    }
+}
@@ -0,0 +1,215 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import io.github.jdaapplications.guildbot.GuildBot;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import net.dv8tion.jda.core.entities.Message;
+import net.dv8tion.jda.core.entities.TextChannel;
+import org.hjson.JsonObject;
+
+/**
+ * Retrieves the scripts of many channels at once.
+ * <br>Only {@code parallelism} requests are in flight at the same time, so JDA's rate limiter can pace them
+ * instead of queueing a request for every channel of the guild at once.
+ * Channels which don't respond within {@code timeout} seconds are left out of the result and reported as timed out.
+ *
+ * @author Aljoscha Grebe
+ */
+public class ScriptLoader
+{
+    protected final GuildBot guildBot;
+    protected final int parallelism;
+    protected final long timeout;
+
+    public ScriptLoader(final GuildBot guildBot)
+    {
+        this.guildBot = guildBot;
+
+        final JsonObject config = guildBot.getConfig().get("loader") == null
+                ? new JsonObject()
+                : guildBot.getConfig().get("loader").asObject();
+
+        this.parallelism = Math.max(1, config.getInt("parallelism", 5));
+        this.timeout = TimeUnit.SECONDS.toNanos(config.getLong("timeout", 10));
+    }
+
+    /**
+     * Retrieves the scripts of the given channels, blocking until all of them have been retrieved, failed or timed out.
+     *
+     * @param  channels
+     *         The channels to retrieve the scripts of
+     * @param  configs
+     *         The configs of the channels by channel id, used to determine the number of messages to retrieve
+     *
+     * @return The retrieved scripts
+     */
+    public Result load(final List<TextChannel> channels, final Map<Long, JsonObject> configs)
+    {
+        final long start = System.nanoTime();
+
+        final Semaphore permits = new Semaphore(this.parallelism);
+        final List<TextChannel> timedOut = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger failed = new AtomicInteger(0);
+
+        // every channel is claimed exactly once by completing its future, either with the retrieved script or with null if it failed or timed out
+        final List<CompletableFuture<ScriptSnapshot.Entry>> futures = new ArrayList<>(channels.size());
+        for (final TextChannel channel : channels)
+        {
+            permits.acquireUninterruptibly();
+
+            final CompletableFuture<ScriptSnapshot.Entry> future = new CompletableFuture<>();
+            futures.add(future);
+
+            // a channel which misses its deadline gives its permit back, its request may still complete but is ignored
+            final ScheduledFuture<?> deadline = this.guildBot.getThreadPool().scheduleTimer(() ->
+            {
+                if (future.complete(null))
+                    timedOut.add(channel);
+            }, this.timeout, TimeUnit.NANOSECONDS);
+            future.whenComplete((v, t) ->
+            {
+                deadline.cancel(false);
+                permits.release();
+            });
+
+            channel.getHistory().retrievePast(configs.get(channel.getIdLong()).getInt("length", 1)).queue(l ->
+            {
+                if (future.isDone())
+                    return;
+
+                // the history is ordered from the newest to the oldest message
+                final long firstMessageId = l.isEmpty() ? 0L : l.get(l.size() - 1).getIdLong();
+                final long lastMessageId = l.isEmpty() ? 0L : l.get(0).getIdLong();
+                Collections.reverse(l);
+                final String script = l.stream()
+                        .map(Message::getContentRaw)
+                        .collect(Collectors.joining("\n"));
+
+                future.complete(new ScriptSnapshot.Entry(channel, firstMessageId, lastMessageId, script));
+            }, t ->
+            {
+                if (!future.complete(null))
+                    return;
+
+                failed.incrementAndGet();
+                GuildBot.log.error("An error occurred while retrieving the messages of channel \"" + channel.getName() + "\"", t);
+                this.guildBot.handleThrowable(t, "RestAction failure trying to retrieve history");
+            });
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        // only the scripts which won the race against their deadline end up in the result
+        final Map<Long, ScriptSnapshot.Entry> entries = new HashMap<>(channels.size());
+        long bytes = 0;
+        for (final CompletableFuture<ScriptSnapshot.Entry> future : futures)
+        {
+            final ScriptSnapshot.Entry entry = future.join();
+            if (entry == null)
+                continue;
+            entries.put(entry.getChannelId(), entry);
+            bytes += entry.getScript().getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        final Result result = new Result(entries, timedOut, channels.size(), failed.get(), bytes, System.nanoTime() - start);
+        GuildBot.log.info("Loaded {}", result);
+        return result;
+    }
+
+    public static class Result
+    {
+        protected final long bytes;
+        protected final int channelCount;
+        protected final Map<Long, ScriptSnapshot.Entry> entries;
+        protected final int failed;
+        protected final Map<Long, String> scripts;
+        protected final List<TextChannel> timedOut;
+        protected final long time;
+
+        protected Result(final Map<Long, ScriptSnapshot.Entry> entries, final List<TextChannel> timedOut, final int channelCount, final int failed, final long bytes, final long time)
+        {
+            this.entries = Collections.unmodifiableMap(new HashMap<>(entries));
+            this.scripts = Collections.unmodifiableMap(entries.values().stream()
+                    .collect(Collectors.toMap(ScriptSnapshot.Entry::getChannelId, ScriptSnapshot.Entry::getScript)));
+            this.timedOut = Collections.unmodifiableList(new ArrayList<>(timedOut));
+            this.channelCount = channelCount;
+            this.failed = failed;
+            this.bytes = bytes;
+            this.time = time;
+        }
+
+        /**
+         * The size of all retrieved scripts.
+         *
+         * @return The number of bytes in UTF-8
+         */
+        public long getBytes()
+        {
+            return this.bytes;
+        }
+
+        public int getChannelCount()
+        {
+            return this.channelCount;
+        }
+
+        /**
+         * The retrieved scripts including the ids of their messages by channel id.
+         * <br>Contains neither channels which failed nor channels which timed out.
+         *
+         * @return An unmodifiable map of entries
+         */
+        public Map<Long, ScriptSnapshot.Entry> getEntries()
+        {
+            return this.entries;
+        }
+
+        public int getFailed()
+        {
+            return this.failed;
+        }
+
+        /**
+         * The retrieved scripts by channel id.
+         * <br>Contains neither channels which failed nor channels which timed out.
+         *
+         * @return An unmodifiable map of scripts
+         */
+        public Map<Long, String> getScripts()
+        {
+            return this.scripts;
+        }
+
+        public long getTime(final TimeUnit unit)
+        {
+            return unit.convert(this.time, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * The channels which did not respond in time, they have to be loaded separately.
+         *
+         * @return An unmodifiable list of channels
+         */
+        public List<TextChannel> getTimedOut()
+        {
+            return this.timedOut;
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.channelCount + " channels (" + this.bytes + " bytes of script) in " + TimeUnit.NANOSECONDS.toMillis(this.time) + "ms, "
+                    + this.failed + " failed, " + this.timedOut.size() + " timed out";
+        }
+    }
+}
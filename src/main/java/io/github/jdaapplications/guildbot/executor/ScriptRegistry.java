@@ -0,0 +1,232 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import io.github.jdaapplications.guildbot.executor.executable.Command;
+import io.github.jdaapplications.guildbot.executor.executable.Executable;
+import io.github.jdaapplications.guildbot.executor.executable.Method;
+import io.github.jdaapplications.guildbot.executor.executable.Variables;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable snapshot of all commands, methods and vars of the guild.
+ * <br>Changes create a new registry which shares nothing mutable with this one,
+ * so an execution can keep using the registry it started with while the next one gets published.
+ *
+ * @author Aljoscha Grebe
+ */
+public class ScriptRegistry
+{
+    public static final ScriptRegistry EMPTY = new ScriptRegistry(Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
+
+    protected final Map<String, Command> commands;
+    protected final CommandTrie commandTrie;
+    protected final Map<String, Method> methods;
+    protected final Map<String, Variables> vars;
+
+    // derived from the immutable content above, so caching it does not break the snapshot
+    protected final Map<Executable, Dependencies> dependencies;
+
+    protected ScriptRegistry(final Map<String, Command> commands, final Map<String, Method> methods, final Map<String, Variables> vars)
+    {
+        this.commands = Collections.unmodifiableMap(commands);
+        this.commandTrie = CommandTrie.of(commands);
+        this.methods = Collections.unmodifiableMap(methods);
+        this.vars = Collections.unmodifiableMap(vars);
+        this.dependencies = new ConcurrentHashMap<>();
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    public Command getCommand(final String name)
+    {
+        return this.commands.get(name);
+    }
+
+    /**
+     * Finds the command whose name is the given region of the text, ignoring case, without creating a substring.
+     *
+     * @param  text
+     *         The text containing the name
+     * @param  start
+     *         The index of the first character of the name
+     * @param  end
+     *         The index after the last character of the name
+     *
+     * @return The command, or {@code null} if there is no command with that name
+     */
+    public Command getCommand(final CharSequence text, final int start, final int end)
+    {
+        return this.commandTrie.get(text, start, end);
+    }
+
+    /**
+     * All commands by their names, a command with aliases is contained once per name.
+     *
+     * @return An unmodifiable map of all commands
+     */
+    public Map<String, Command> getCommands()
+    {
+        return this.commands;
+    }
+
+    /**
+     * The methods and vars of this registry the given executable needs.
+     *
+     * @param  executable
+     *         The executable
+     *
+     * @return The dependencies of the executable
+     */
+    public Dependencies getDependencies(final Executable executable)
+    {
+        return this.dependencies.computeIfAbsent(executable, e -> Dependencies.resolve(e, this));
+    }
+
+    public Method getMethod(final String name)
+    {
+        return this.methods.get(name);
+    }
+
+    public Map<String, Method> getMethods()
+    {
+        return this.methods;
+    }
+
+    public Map<String, Variables> getVars()
+    {
+        return this.vars;
+    }
+
+    public int size()
+    {
+        return this.commands.size() + this.methods.size() + this.vars.size();
+    }
+
+    /**
+     * Creates a builder which starts with the content of this registry.
+     *
+     * @return A new builder
+     */
+    public Builder toBuilder()
+    {
+        return new Builder(this);
+    }
+
+    /**
+     * Creates a new registry with the given command registered for every name of the channel.
+     *
+     * @param  channelName
+     *         The name of the channel the command is defined in
+     * @param  command
+     *         The command
+     *
+     * @return The new registry
+     */
+    public ScriptRegistry withCommand(final String channelName, final Command command)
+    {
+        return this.toBuilder().putCommand(channelName, command).build();
+    }
+
+    public ScriptRegistry withMethod(final String name, final Method method)
+    {
+        return this.toBuilder().putMethod(name, method).build();
+    }
+
+    public ScriptRegistry withVars(final String name, final Variables variables)
+    {
+        return this.toBuilder().putVars(name, variables).build();
+    }
+
+    /**
+     * Creates a new registry without the script of the given channel.
+     *
+     * @param  channelName
+     *         The name of the channel
+     *
+     * @return The new registry, or this one if it did not contain a script of that channel
+     */
+    public ScriptRegistry without(final String channelName)
+    {
+        final Builder builder = this.toBuilder();
+        return builder.remove(channelName) ? builder.build() : this;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("ScriptRegistry[commands=%d, methods=%d, vars=%d]", this.commands.size(), this.methods.size(), this.vars.size());
+    }
+
+    public static class Builder
+    {
+        protected final Map<String, Command> commands;
+        protected final Map<String, Method> methods;
+        protected final Map<String, Variables> vars;
+
+        protected Builder()
+        {
+            this.commands = new HashMap<>();
+            this.methods = new HashMap<>();
+            this.vars = new HashMap<>();
+        }
+
+        protected Builder(final ScriptRegistry registry)
+        {
+            this.commands = new HashMap<>(registry.commands);
+            this.methods = new HashMap<>(registry.methods);
+            this.vars = new HashMap<>(registry.vars);
+        }
+
+        public ScriptRegistry build()
+        {
+            return new ScriptRegistry(new HashMap<>(this.commands), new HashMap<>(this.methods), new HashMap<>(this.vars));
+        }
+
+        public Builder putCommand(final String channelName, final Command command)
+        {
+            for (final String name : channelName.substring(4).split("-"))
+                this.commands.put(name, command);
+            return this;
+        }
+
+        public Builder putMethod(final String name, final Method method)
+        {
+            this.methods.put(name, method);
+            return this;
+        }
+
+        public Builder putVars(final String name, final Variables variables)
+        {
+            this.vars.put(name, variables);
+            return this;
+        }
+
+        /**
+         * Removes the script of the given channel.
+         *
+         * @param  channelName
+         *         The name of the channel
+         *
+         * @return Whether anything got removed
+         */
+        public boolean remove(final String channelName)
+        {
+            if (channelName.startsWith("mthd-"))
+                return this.methods.remove(channelName.substring(5)) != null;
+            if (channelName.startsWith("vars-"))
+                return this.vars.remove(channelName.substring(5)) != null;
+            if (!channelName.startsWith("cmd-"))
+                return false;
+
+            boolean removed = false;
+            for (final String name : channelName.substring(4).split("-"))
+                removed |= this.commands.remove(name) != null;
+            return removed;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import io.github.jdaapplications.guildbot.GuildBot;
+import io.github.jdaapplications.guildbot.util.ScriptUtils;
+import io.github.jdaapplications.guildbot.util.ThreadPool;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import net.dv8tion.jda.core.entities.TextChannel;
+import org.hjson.JsonArray;
+import org.hjson.JsonObject;
+import org.hjson.JsonValue;
+
+/**
+ * A copy of the scripts of all script channels on disk, so the bot can accept commands right after a restart
+ * and only has to compile the channels which changed while it was offline.
+ * <br>A channel counts as changed if its name, its topic or the hash of its script differ from the snapshot, see {@link Entry#hasSameScript(Entry)},
+ * so edits and deletions of messages inside of the window of the script are detected as well.
+ *
+ * @author Aljoscha Grebe
+ */
+public class ScriptSnapshot
+{
+    protected static final int VERSION = 1;
+
+    protected final Map<Long, Entry> entries;
+    protected final Path file;
+    protected final GuildBot guildBot;
+    protected final AtomicBoolean saveScheduled;
+    protected final long saveDelay;
+
+    public ScriptSnapshot(final GuildBot guildBot)
+    {
+        this.guildBot = guildBot;
+
+        final JsonObject config = guildBot.getConfig().get("snapshot") == null
+                ? new JsonObject()
+                : guildBot.getConfig().get("snapshot").asObject();
+
+        final String file = config.getString("file", "scripts.snapshot.json");
+        this.file = file.isEmpty() ? null : Paths.get(file);
+        this.saveDelay = TimeUnit.SECONDS.toNanos(config.getLong("saveDelay", 10));
+
+        this.entries = new ConcurrentHashMap<>();
+        this.saveScheduled = new AtomicBoolean(false);
+    }
+
+    public Entry get(final long channelId)
+    {
+        return this.entries.get(channelId);
+    }
+
+    public Collection<Entry> getEntries()
+    {
+        return Collections.unmodifiableCollection(this.entries.values());
+    }
+
+    public boolean isEnabled()
+    {
+        return this.file != null;
+    }
+
+    public boolean isEmpty()
+    {
+        return this.entries.isEmpty();
+    }
+
+    public void put(final Entry entry)
+    {
+        this.entries.put(entry.getChannelId(), entry);
+    }
+
+    /**
+     * Removes the entry of the channel with the given name, used once a channel got deleted or renamed.
+     *
+     * @param channelName
+     *        The name of the channel
+     */
+    public void remove(final String channelName)
+    {
+        this.entries.values().removeIf(e -> e.getName().equals(channelName));
+    }
+
+    /**
+     * Replaces all entries, used after all channels have been retrieved.
+     *
+     * @param entries
+     *        The new entries
+     */
+    public void replace(final Collection<Entry> entries)
+    {
+        this.entries.clear();
+        entries.forEach(this::put);
+    }
+
+    /**
+     * Reads the snapshot file, entries whose script does not match their hash are skipped.
+     *
+     * @param  guildId
+     *         The id of the guild the snapshot has to belong to
+     *
+     * @return {@code true} if the snapshot could be read
+     */
+    public boolean read(final long guildId)
+    {
+        if (this.file == null || !Files.isReadable(this.file))
+            return false;
+
+        try (final Reader reader = Files.newBufferedReader(this.file, StandardCharsets.UTF_8))
+        {
+            final JsonObject json = JsonValue.readJSON(reader).asObject();
+            if (json.getInt("version", 0) != ScriptSnapshot.VERSION || !Long.toString(guildId).equals(json.getString("guildId", null)))
+            {
+                GuildBot.log.info("Ignoring snapshot {} as it belongs to another guild or version", this.file);
+                return false;
+            }
+
+            this.entries.clear();
+            for (final JsonValue value : json.get("channels").asArray())
+            {
+                final Entry entry = Entry.fromJson(value.asObject());
+                if (entry.getHash().equals(ScriptUtils.hash(entry.getScript())))
+                    this.put(entry);
+                else
+                    GuildBot.log.warn("Ignoring corrupt snapshot of channel {}", entry.getName());
+            }
+            return true;
+        }
+        catch (final IOException | RuntimeException e)
+        {
+            GuildBot.log.error("An error occurred while reading the snapshot " + this.file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Writes the snapshot file, the previous file is replaced atomically where the file system supports it.
+     */
+    public synchronized void save()
+    {
+        this.saveScheduled.set(false);
+        if (this.file == null)
+            return;
+
+        final JsonArray channels = new JsonArray();
+        this.entries.values().forEach(e -> channels.add(e.toJson()));
+
+        final JsonObject json = new JsonObject()
+                .add("version", ScriptSnapshot.VERSION)
+                .add("guildId", Long.toString(this.guildBot.getConfig().getLong("guildId", 0)))
+                .add("channels", channels);
+
+        try
+        {
+            final Path temp = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+            try (final Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8))
+            {
+                json.writeTo(writer);
+            }
+            try
+            {
+                Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (final AtomicMoveNotSupportedException e)
+            {
+                Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (final IOException e)
+        {
+            GuildBot.log.error("An error occurred while writing the snapshot " + this.file, e);
+        }
+    }
+
+    /**
+     * Saves the snapshot after {@code saveDelay} seconds, further calls until then are covered by the same save.
+     */
+    public void saveLater()
+    {
+        if (this.file != null && this.saveScheduled.compareAndSet(false, true))
+            this.guildBot.getThreadPool().getExecutor(ThreadPool.Priority.BACKGROUND).schedule(this::save, this.saveDelay, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ScriptSnapshot[" + this.file + ", " + this.entries.size() + " channels]";
+    }
+
+    public static class Entry
+    {
+        protected final long channelId;
+        protected final long firstMessageId;
+        protected final String hash;
+        protected final long lastMessageId;
+        protected final String name;
+        protected final String script;
+        protected final String topic;
+
+        public Entry(final long channelId, final String name, final String topic, final long firstMessageId, final long lastMessageId, final String script)
+        {
+            this(channelId, name, topic, firstMessageId, lastMessageId, script, ScriptUtils.hash(script));
+        }
+
+        protected Entry(final long channelId, final String name, final String topic, final long firstMessageId, final long lastMessageId, final String script, final String hash)
+        {
+            this.channelId = channelId;
+            this.name = name;
+            this.topic = topic == null ? "" : topic;
+            this.firstMessageId = firstMessageId;
+            this.lastMessageId = lastMessageId;
+            this.script = script;
+            this.hash = hash;
+        }
+
+        public Entry(final TextChannel channel, final long firstMessageId, final long lastMessageId, final String script)
+        {
+            this(channel.getIdLong(), channel.getName(), channel.getTopic(), firstMessageId, lastMessageId, script);
+        }
+
+        protected static Entry fromJson(final JsonObject json)
+        {
+            return new Entry(Long.parseLong(json.getString("id", "0")), json.getString("name", ""), json.getString("topic", ""),
+                    Long.parseLong(json.getString("firstMessageId", "0")), Long.parseLong(json.getString("lastMessageId", "0")), json.getString("script", ""), json.getString("hash", ""));
+        }
+
+        public long getChannelId()
+        {
+            return this.channelId;
+        }
+
+        /**
+         * The id of the oldest message the script has been built from,
+         * changes of older messages can't affect the script.
+         *
+         * @return The id of the message, {@code 0} if the channel was empty or the id is unknown
+         */
+        public long getFirstMessageId()
+        {
+            return this.firstMessageId;
+        }
+
+        /**
+         * The SHA-256 hash of the script.
+         *
+         * @return The hash as lower case hex string
+         */
+        public String getHash()
+        {
+            return this.hash;
+        }
+
+        /**
+         * The id of the newest message the script has been built from.
+         *
+         * @return The id of the message, {@code 0} if the channel was empty
+         */
+        public long getLastMessageId()
+        {
+            return this.lastMessageId;
+        }
+
+        public String getName()
+        {
+            return this.name;
+        }
+
+        public String getScript()
+        {
+            return this.script;
+        }
+
+        public String getTopic()
+        {
+            return this.topic;
+        }
+
+        /**
+         * Whether the given entry belongs to the same channel and would compile to the same scripts,
+         * i.e. whether the channel has the same name, topic and script.
+         *
+         * @param  other
+         *         The other entry
+         *
+         * @return {@code true} if the entries are interchangeable except for their message ids
+         */
+        public boolean hasSameScript(final Entry other)
+        {
+            return other != null && other.channelId == this.channelId && other.name.equals(this.name) && other.topic.equals(this.topic) && other.hash.equals(this.hash);
+        }
+
+        /**
+         * Whether the given message can be part of the script, i.e. whether it is not older than the oldest message of the script.
+         *
+         * @param  messageId
+         *         The id of the message
+         *
+         * @return {@code true} if a change of the message may change the script
+         */
+        public boolean isInWindow(final long messageId)
+        {
+            return this.firstMessageId == 0 || messageId >= this.firstMessageId;
+        }
+
+        protected JsonObject toJson()
+        {
+            // ids are stored as strings as json numbers can't hold every long
+            return new JsonObject()
+                    .add("id", Long.toString(this.channelId))
+                    .add("name", this.name)
+                    .add("topic", this.topic)
+                    .add("firstMessageId", Long.toString(this.firstMessageId))
+                    .add("lastMessageId", Long.toString(this.lastMessageId))
+                    .add("hash", this.hash)
+                    .add("script", this.script);
+        }
+    }
+}
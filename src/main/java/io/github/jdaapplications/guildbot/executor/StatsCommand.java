@@ -0,0 +1,225 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import io.github.jdaapplications.guildbot.GuildBot;
+import io.github.jdaapplications.guildbot.metrics.CommandMetrics;
+import io.github.jdaapplications.guildbot.metrics.LatencySnapshot;
+import io.github.jdaapplications.guildbot.metrics.Metrics;
+import io.github.jdaapplications.guildbot.util.ThreadPool;
+import java.awt.Color;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.time.Instant;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import net.dv8tion.jda.core.EmbedBuilder;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.MessageEmbed;
+import net.dv8tion.jda.core.entities.Role;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+import org.hjson.JsonObject;
+import org.hjson.JsonValue;
+
+/**
+ * The built-in {@code stats} command, shows the slowest commands and the state of the executor to the members of the configured roles.
+ * <br>The first page gives an overview, the following pages list the commands ordered by their 95th percentile latency.
+ *
+ * @author Aljoscha Grebe
+ */
+public class StatsCommand
+{
+    protected static final Color COLOR = new Color(0x7289DA);
+
+    protected final CommandExecutor executor;
+    protected final String name;
+    protected final int pageSize;
+    protected final Set<String> roles;
+
+    public StatsCommand(final CommandExecutor executor)
+    {
+        this.executor = executor;
+
+        final JsonValue value = executor.getGuildBot().getConfig().get("stats");
+        final JsonObject config = value == null ? new JsonObject() : value.asObject();
+
+        this.name = config.getString("command", "stats");
+        this.pageSize = Math.min(25, Math.max(1, config.getInt("pageSize", 10)));
+
+        final JsonValue roleArray = config.get("roles");
+        this.roles = Collections.unmodifiableSet(roleArray == null
+                ? Collections.emptySet()
+                : roleArray.asArray().values().stream()
+                    .filter(JsonValue::isString)
+                    .map(JsonValue::asString)
+                    .collect(Collectors.toSet()));
+    }
+
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /**
+     * Whether the given member has one of the configured roles, the command is disabled if no roles are configured.
+     *
+     * @param  member
+     *         The member, {@code null} for private messages
+     *
+     * @return {@code true} if the member may use the command
+     */
+    public boolean isAllowed(final Member member)
+    {
+        if (member == null || this.roles.isEmpty())
+            return false;
+        for (final Role role : member.getRoles())
+            if (this.roles.contains(role.getId()))
+                return true;
+        return false;
+    }
+
+    /**
+     * Whether the given region of the text is the name of this command, ignoring case.
+     *
+     * @param  text
+     *         The text containing the name
+     * @param  start
+     *         The index of the first character of the name
+     * @param  end
+     *         The index after the last character of the name
+     *
+     * @return {@code true} if the region matches the name of this command
+     */
+    public boolean matches(final String text, final int start, final int end)
+    {
+        return end - start == this.name.length() && text.regionMatches(true, start, this.name, 0, this.name.length());
+    }
+
+    /**
+     * Renders the requested page and sends it, has to be called off the event thread.
+     *
+     * @param event
+     *        The event which triggered the command
+     * @param args
+     *        The arguments of the command, the page number
+     */
+    public void execute(final MessageReceivedEvent event, final String args)
+    {
+        if (!this.isAllowed(event.getMember()))
+            return;
+
+        int page = 1;
+        try
+        {
+            if (!args.trim().isEmpty())
+                page = Integer.parseInt(args.trim());
+        }
+        catch (final NumberFormatException ignored) {}
+
+        event.getChannel().sendMessage(this.render(page)).queue();
+    }
+
+    /**
+     * Renders a single page.
+     *
+     * @param  page
+     *         The page, starting at {@code 1}, pages out of range are clamped
+     *
+     * @return The page
+     */
+    public MessageEmbed render(final int page)
+    {
+        final Metrics metrics = this.executor.getGuildBot().getMetrics();
+
+        // sort by the latency of the last interval, commands which did not run in it have no latency to compare
+        final Map<Long, Double> p95 = new HashMap<>();
+        metrics.getCommandsById().forEach((channelId, command) ->
+        {
+            final LatencySnapshot latency = command.getLatency();
+            if (latency.getIntervalCount() > 0)
+                p95.put(channelId, latency.getP95());
+        });
+        final List<Entry<String, CommandMetrics>> commands = p95.entrySet().stream()
+                .sorted(Entry.<Long, Double>comparingByValue().reversed())
+                .map(e -> new SimpleEntry<>(metrics.getCommandName(e.getKey()), metrics.getCommand(e.getKey())))
+                .collect(Collectors.toList());
+
+        final int pages = 1 + (commands.size() + this.pageSize - 1) / this.pageSize;
+        final int current = Math.max(1, Math.min(pages, page));
+
+        final EmbedBuilder builder = new EmbedBuilder()
+                .setColor(StatsCommand.COLOR)
+                .setTimestamp(Instant.now())
+                .setFooter(String.format("Page %d/%d, use %s%s <page> to switch pages", current, pages, this.executor.getPrefix(), this.name), null);
+
+        if (current == 1)
+            this.renderOverview(builder, metrics);
+        else
+            this.renderCommands(builder, commands.subList((current - 2) * this.pageSize, Math.min(commands.size(), (current - 1) * this.pageSize)), (current - 2) * this.pageSize);
+
+        return builder.build();
+    }
+
+    protected void renderCommands(final EmbedBuilder builder, final List<Entry<String, CommandMetrics>> commands, final int offset)
+    {
+        builder.setTitle("Slowest commands by p95 latency");
+        for (int i = 0; i < commands.size(); i++)
+        {
+            final Entry<String, CommandMetrics> entry = commands.get(i);
+            final CommandMetrics command = entry.getValue();
+            final LatencySnapshot latency = command.getLatency();
+            builder.addField(String.format("%d. %s", offset + i + 1, entry.getKey()), String.format(
+                    "p95 **%.1fms** p99 %.1fms max %.1fms%nwait %.1fms prepare %.1fms eval %.1fms%n%d runs, %d errors, %d timeouts, %d rejected",
+                    latency.getP95(), latency.getP99(), latency.getMax(),
+                    command.getQueueWait().getP95(), command.getPreparation().getP95(), command.getEvaluation().getP95(),
+                    command.getInvocations(), command.getErrors(), command.getTimeouts(), command.getRejections()), false);
+        }
+    }
+
+    protected void renderOverview(final EmbedBuilder builder, final Metrics metrics)
+    {
+        final GuildBot guildBot = this.executor.getGuildBot();
+        final ThreadPool threadPool = guildBot.getThreadPool();
+        final EnginePool enginePool = this.executor.getEnginePool();
+
+        builder.setTitle("GuildBot statistics");
+
+        builder.addField("Executor", String.format("%s threads%n%d active, %d quarantined%n%d queued, %d background, %d reporting",
+                threadPool.getMode().getName(), threadPool.getActiveCount(), threadPool.getQuarantinedCount(), threadPool.getQueueSize(ThreadPool.Priority.INTERACTIVE),
+                threadPool.getQueueSize(ThreadPool.Priority.BACKGROUND), threadPool.getQueueSize(ThreadPool.Priority.REPORTING)), true);
+
+        builder.addField("Engine pool", String.format("%d/%d in use, %d idle%n%d hits, %d misses, %d waits (%dms)",
+                enginePool.getSize() - enginePool.getIdle(), enginePool.getMax(), enginePool.getIdle(),
+                enginePool.getHits(), enginePool.getMisses(), enginePool.getWaits(), enginePool.getWaitTime(TimeUnit.MILLISECONDS)), true);
+
+        final MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        final String gc = ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .map(b -> String.format("%s: %d (%dms)", b.getName(), b.getCollectionCount(), b.getCollectionTime()))
+                .collect(Collectors.joining("\n"));
+        builder.addField("Heap", String.format("%dMB used, %dMB committed, %dMB max%n%s",
+                heap.getUsed() >> 20, heap.getCommitted() >> 20, heap.getMax() >> 20, gc), false);
+
+        builder.addField("Classes", String.format("%d loaded, %d unloaded%n%s%n%s",
+                metrics.getLoadedClasses(), metrics.getUnloadedClasses(), Engine.GROOVY_CLASS_CACHE, Engine.JAVA_CLASS_CACHE), false);
+
+        final ScriptRegistry registry = this.executor.getRegistry();
+        final ScriptLoader.Result lastLoad = this.executor.getLastLoad();
+        builder.addField("Registry", String.format("%d commands, %d methods, %d vars%n%s%n%d updates applied, %d skipped, %d merged",
+                registry.getCommands().size(), registry.getMethods().size(), registry.getVars().size(),
+                lastLoad == null ? "loaded from snapshot" : "last load: " + lastLoad,
+                this.executor.getAppliedUpdates(), this.executor.getSkippedUpdates(), this.executor.getMergedUpdates()), false);
+
+        final List<Metrics.Timeout> timeouts = metrics.getRecentTimeouts();
+        builder.addField("Recent timeouts", timeouts.isEmpty()
+                ? "none"
+                : timeouts.stream()
+                    .limit(5)
+                    .map(t -> String.format("%s %s: %.100s", Instant.ofEpochMilli(t.getTime()), metrics.getCommandName(t.getChannelId()), t.getReason()))
+                    .collect(Collectors.joining("\n")), false);
+    }
+}
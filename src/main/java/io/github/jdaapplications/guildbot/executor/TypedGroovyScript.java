@@ -0,0 +1,96 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import groovy.lang.Binding;
+import groovy.lang.MissingPropertyException;
+import groovy.lang.Script;
+import io.github.jdaapplications.guildbot.GuildBot;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+
+/**
+ * The base class of groovy scripts which are compiled statically, see {@link Engine#compile(String, boolean)}.
+ * <br>The type checker can't know the bindings of a script, so the usual bindings are declared as typed properties here.
+ * Everything else, e.g. the values defined by vars, can be read with {@link #get(String)} and methods can be called with {@link #invoke(String, Object...)}.
+ *
+ * @author Aljoscha Grebe
+ */
+public abstract class TypedGroovyScript extends Script
+{
+    protected TypedGroovyScript() {}
+
+    protected TypedGroovyScript(final Binding binding)
+    {
+        super(binding);
+    }
+
+    public String getArgs()
+    {
+        return this.get("args", String.class);
+    }
+
+    public MessageReceivedEvent getEvent()
+    {
+        return this.get("event", MessageReceivedEvent.class);
+    }
+
+    public GlobalStore.Namespace getGlobal()
+    {
+        return this.get("global", GlobalStore.Namespace.class);
+    }
+
+    public GuildBot getGuildBot()
+    {
+        return this.get("guildBot", GuildBot.class);
+    }
+
+    // the helpers are protected, as the groovy engine shares every public method of a script with all other scripts of the engine
+
+    /**
+     * The value of the given binding.
+     *
+     * @param  name
+     *         The name of the binding
+     *
+     * @return The value or {@code null} if there is no such binding
+     */
+    protected Object get(final String name)
+    {
+        // the binding of the engine looks the name up in all scopes of the context, hasVariable would only check the engine scope
+        try
+        {
+            return this.getBinding().getVariable(name);
+        }
+        catch (final MissingPropertyException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * The value of the given binding if it has the given type, see {@link ScriptBindings#cast(Object, Class)}.
+     */
+    protected <T> T get(final String name, final Class<T> type)
+    {
+        return ScriptBindings.cast(this.get(name), type);
+    }
+
+    /**
+     * Invokes the given method, see {@link ScriptBindings#invoke(Object, String, Object...)}.
+     */
+    protected Object invoke(final String name, final Object... args)
+    {
+        return ScriptBindings.invoke(this.get(name), name, args);
+    }
+
+    /**
+     * Sets a binding, so scripts which run after this one can use it, e.g. the values defined by vars.
+     *
+     * @param name
+     *        The name of the binding
+     * @param value
+     *        The value
+     */
+    protected void set(final String name, final Object value)
+    {
+        this.getBinding().setVariable(name, value);
+    }
+}
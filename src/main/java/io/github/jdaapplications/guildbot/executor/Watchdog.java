@@ -0,0 +1,235 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import io.github.jdaapplications.guildbot.GuildBot;
+import io.github.jdaapplications.guildbot.util.ThreadPool;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Interrupts a thread once a script running on it exceeded its {@link ScriptLimits}.
+ * <br>Scripts run on the thread which executes the command, only the checks get scheduled,
+ * so a command never blocks a second pool thread while waiting for its scripts.
+ *
+ * <p>Scripts which keep running after they have been interrupted get quarantined,
+ * the pool gets an additional thread until they finish, so runaway scripts don't eat up its capacity.
+ * The number of additional threads is limited, see {@link ThreadPool#quarantine(Thread)}.
+ *
+ * @author Aljoscha Grebe
+ */
+public class Watchdog implements Runnable
+{
+    public static final InterruptCheck INTERRUPT_CHECK = new InterruptCheck();
+
+    protected static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    protected static final com.sun.management.ThreadMXBean SUN_THREAD_MX_BEAN = Watchdog.THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) Watchdog.THREAD_MX_BEAN).isThreadAllocatedMemorySupported()
+            ? (com.sun.management.ThreadMXBean) Watchdog.THREAD_MX_BEAN
+            : null;
+    protected static final long QUARANTINE_DELAY = TimeUnit.SECONDS.toNanos(1);
+
+    protected final ScriptLimits limits;
+    protected final Runnable onQuarantine;
+    protected final ThreadPool pool;
+    protected final long startAllocatedBytes;
+    protected final long startCpuTime;
+    protected final Thread thread;
+
+    protected ScheduledFuture<?> resourceCheck;
+    protected ScheduledFuture<?> timeout;
+    protected boolean done;
+    protected boolean quarantined;
+    protected String violation;
+
+    protected Watchdog(final ThreadPool pool, final Thread thread, final ScriptLimits limits, final Runnable onQuarantine)
+    {
+        this.pool = pool;
+        this.thread = thread;
+        this.limits = limits;
+        this.onQuarantine = onQuarantine;
+        this.startCpuTime = Watchdog.THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? Watchdog.THREAD_MX_BEAN.getCurrentThreadCpuTime() : -1;
+        this.startAllocatedBytes = Watchdog.getAllocatedBytes(thread);
+    }
+
+    /**
+     * The number of bytes the given thread allocated on the heap since it has been started.
+     *
+     * @param  thread
+     *         The thread
+     *
+     * @return The number of bytes, {@code -1} if the jvm does not support measuring it
+     */
+    public static long getAllocatedBytes(final Thread thread)
+    {
+        return Watchdog.SUN_THREAD_MX_BEAN == null ? -1 : Watchdog.SUN_THREAD_MX_BEAN.getThreadAllocatedBytes(thread.getId());
+    }
+
+    /**
+     * The cpu time the given thread used since it has been started.
+     *
+     * @param  thread
+     *         The thread
+     *
+     * @return The cpu time in nanoseconds, {@code -1} if the jvm does not support measuring it
+     */
+    public static long getCpuTime(final Thread thread)
+    {
+        return Watchdog.THREAD_MX_BEAN.isThreadCpuTimeSupported() ? Watchdog.THREAD_MX_BEAN.getThreadCpuTime(thread.getId()) : -1;
+    }
+
+    /**
+     * Runs the given script on the current thread and interrupts it once it exceeds its limits.
+     *
+     * @param  pool
+     *         The pool to schedule the checks on
+     * @param  script
+     *         The script to run
+     * @param  limits
+     *         The limits of the script
+     * @param  onQuarantine
+     *         Called if the script does not stop after being interrupted, may be {@code null}
+     * @param  <T>
+     *         The type of the result
+     *
+     * @throws TimeoutException
+     *         If the script has been interrupted because it exceeded its limits
+     * @throws Exception
+     *         If the script threw an error
+     *
+     * @return The result of the script
+     */
+    public static <T> T call(final ThreadPool pool, final Callable<T> script, final ScriptLimits limits, final Runnable onQuarantine) throws Exception
+    {
+        final Watchdog watchdog = new Watchdog(pool, Thread.currentThread(), limits, onQuarantine);
+        watchdog.start();
+        try
+        {
+            final T result = script.call();
+            if (watchdog.finish() != null)
+                throw new TimeoutException(watchdog.violation);
+            return result;
+        }
+        catch (final Exception e)
+        {
+            if (watchdog.finish() != null)
+            {
+                final TimeoutException timeoutException = new TimeoutException(watchdog.violation);
+                timeoutException.initCause(e);
+                throw timeoutException;
+            }
+            throw e instanceof ExecutionException && e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+        finally
+        {
+            // only clear the interrupt if it came from us, an outer watchdog may have fired as well
+            if (watchdog.finish() != null)
+                Thread.interrupted();
+        }
+    }
+
+    protected synchronized void start()
+    {
+        this.timeout = this.pool.scheduleTimer(this, this.limits.getTimeout(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+
+        final long cpuTime = this.limits.getCpuTime(TimeUnit.NANOSECONDS);
+        final boolean checkCpuTime = cpuTime > 0 && this.startCpuTime >= 0;
+        final boolean checkAllocation = this.limits.getMaxAllocation() > 0 && this.startAllocatedBytes >= 0;
+        if (checkCpuTime || checkAllocation)
+        {
+            final long period = checkCpuTime
+                    ? Math.max(TimeUnit.MILLISECONDS.toNanos(10), Math.min(TimeUnit.MILLISECONDS.toNanos(100), cpuTime / 4))
+                    : TimeUnit.MILLISECONDS.toNanos(50);
+            this.resourceCheck = this.pool.scheduleTimerAtFixedRate(this::checkResources, period, period, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        this.violate("The script did not finish within " + this.limits.getTimeout(TimeUnit.MILLISECONDS) + "ms");
+    }
+
+    protected void checkResources()
+    {
+        final long cpuTimeLimit = this.limits.getCpuTime(TimeUnit.NANOSECONDS);
+        if (cpuTimeLimit > 0)
+        {
+            final long cpuTime = Watchdog.getCpuTime(this.thread);
+            if (cpuTime >= 0 && cpuTime - this.startCpuTime > cpuTimeLimit)
+                this.violate("The script used more than " + this.limits.getCpuTime(TimeUnit.MILLISECONDS) + "ms of cpu time");
+        }
+
+        final long maxAllocation = this.limits.getMaxAllocation();
+        if (maxAllocation > 0)
+        {
+            final long allocatedBytes = Watchdog.getAllocatedBytes(this.thread);
+            if (allocatedBytes >= 0 && allocatedBytes - this.startAllocatedBytes > maxAllocation)
+                this.violate("The script allocated more than " + maxAllocation / (1024 * 1024) + "MB");
+        }
+    }
+
+    protected synchronized void violate(final String reason)
+    {
+        if (this.done || this.violation != null)
+            return;
+
+        this.violation = reason;
+        if (this.resourceCheck != null)
+            this.resourceCheck.cancel(false);
+        this.thread.interrupt();
+
+        this.pool.scheduleTimer(this::quarantine, Watchdog.QUARANTINE_DELAY, TimeUnit.NANOSECONDS);
+    }
+
+    protected synchronized void quarantine()
+    {
+        if (this.done)
+            return;
+
+        this.quarantined = true;
+        GuildBot.log.warn("Thread {} ignored its interrupt ({}), quarantining it", this.thread.getName(), this.violation);
+        if (!this.pool.quarantine(this.thread))
+            GuildBot.log.warn("The pool already replaced {} stuck threads, thread {} keeps its place", this.pool.getQuarantinedCount(), this.thread.getName());
+
+        if (this.onQuarantine != null)
+            this.onQuarantine.run();
+    }
+
+    /**
+     * Marks the script as finished, after this call the thread won't be interrupted anymore.
+     *
+     * @return The limit the script violated, {@code null} if it finished in time
+     */
+    protected synchronized String finish()
+    {
+        if (this.done)
+            return this.violation;
+
+        this.done = true;
+        this.timeout.cancel(false);
+        if (this.resourceCheck != null)
+            this.resourceCheck.cancel(false);
+        if (this.quarantined)
+            this.pool.release(this.thread);
+
+        return this.violation;
+    }
+
+    /**
+     * Called by the loops of scripts which can't be instrumented by their compiler, see {@link Engine#INTERRUPT_CHECK}.
+     */
+    public static class InterruptCheck
+    {
+        protected InterruptCheck() {}
+
+        public void check() throws InterruptedException
+        {
+            if (Thread.interrupted())
+                throw new InterruptedException("The script has been interrupted");
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package io.github.jdaapplications.guildbot.executor.executable;
 
 import io.github.jdaapplications.guildbot.GuildBot;
+import io.github.jdaapplications.guildbot.executor.EngineMap;
+import io.github.jdaapplications.guildbot.executor.GlobalStore;
+import io.github.jdaapplications.guildbot.executor.PreparedScript;
+import io.github.jdaapplications.guildbot.executor.RateLimits;
+import javax.script.ScriptException;
 import org.hjson.JsonObject;
 
 /**
@@ -8,14 +13,31 @@ import org.hjson.JsonObject;
  */
 public class Command extends Executable
 {
+    protected final PreparedScript compiledScript;
     protected final String executableScript;
     protected final long id;
+    protected final String namespace;
+    protected final RateLimits rateLimits;
 
     public Command(final GuildBot guildBot, final long channel, final JsonObject config, final String script)
     {
         super(guildBot, config, script);
         this.id = channel;
         this.executableScript = this.engine.getScript(this.getScript(), this.imports);
+        this.compiledScript = this.compile(this.engine, this.executableScript, this.compileStatic);
+        // parsed once, as the limits are checked for every invocation on the event thread
+        this.rateLimits = RateLimits.of(config, guildBot.getConfig());
+        this.namespace = config.getString("namespace", GlobalStore.SHARED);
+    }
+
+    public Object eval(final EngineMap engines) throws ScriptException
+    {
+        return this.compiledScript.eval(engines.get(this.engine), engines.getContext());
+    }
+
+    public PreparedScript getCompiledScript()
+    {
+        return this.compiledScript;
     }
 
     public String getExecutableScript()
@@ -23,6 +45,21 @@ public class Command extends Executable
         return this.executableScript;
     }
 
+    /**
+     * The namespace of the global store this command sees as {@code global}.
+     *
+     * @return The name of the namespace, {@link GlobalStore#SHARED} if the command shares its store with all other commands
+     */
+    public String getNamespace()
+    {
+        return this.namespace;
+    }
+
+    public RateLimits getRateLimits()
+    {
+        return this.rateLimits;
+    }
+
     public long getChannelId()
     {
         return this.id;
@@ -2,9 +2,12 @@ package io.github.jdaapplications.guildbot.executor.executable;
 
 import io.github.jdaapplications.guildbot.GuildBot;
 import io.github.jdaapplications.guildbot.executor.Engine;
+import io.github.jdaapplications.guildbot.executor.PreparedScript;
+import io.github.jdaapplications.guildbot.util.ScriptUtils;
 import java.util.Collections;
 import java.util.Set;
 import java.util.stream.Collectors;
+import javax.script.ScriptException;
 import org.hjson.JsonObject;
 import org.hjson.JsonValue;
 
@@ -13,9 +16,11 @@ import org.hjson.JsonValue;
  */
 public abstract class Executable
 {
+    protected final boolean compileStatic;
     protected final JsonObject config;
     protected final Engine engine;
     protected final GuildBot guildBot;
+    protected final Set<String> identifiers;
     protected final Set<String> imports;
     protected final String script;
 
@@ -25,8 +30,10 @@ public abstract class Executable
         this.config = config;
 
         this.engine = Engine.getEngine(config.getString("lang", "js"));
+        this.compileStatic = config.getBoolean("static", false);
 
         this.script = this.engine.escapeCodeBlock(script);
+        this.identifiers = ScriptUtils.getIdentifiers(this.script);
 
         final JsonValue importArray = config.get("imports");
         this.imports = Collections.unmodifiableSet(importArray == null
@@ -53,13 +60,50 @@ public abstract class Executable
         return this.guildBot;
     }
 
+    /**
+     * The names this script might reference, used to find its {@link io.github.jdaapplications.guildbot.executor.Dependencies Dependencies}.
+     *
+     * @return An unmodifiable set of names
+     */
+    public Set<String> getIdentifiers()
+    {
+        return this.identifiers;
+    }
+
     public Set<String> getImports()
     {
         return this.imports;
     }
 
+    /**
+     * Whether the script of this executable is compiled statically, see {@link Engine#compile(String, boolean)}.
+     *
+     * @return {@code true} if the topic enables {@code static}
+     */
+    public boolean isStatic()
+    {
+        return this.compileStatic;
+    }
+
     public String getScript()
     {
         return this.script;
     }
+
+    protected PreparedScript compile(final Engine targetEngine, final String executableScript)
+    {
+        return this.compile(targetEngine, executableScript, false);
+    }
+
+    protected PreparedScript compile(final Engine targetEngine, final String executableScript, final boolean compileStatic)
+    {
+        try
+        {
+            return targetEngine.compile(executableScript, compileStatic);
+        }
+        catch (final ScriptException e)
+        {
+            throw new RuntimeException("Could not compile the script for engine " + targetEngine.getName() + "\n" + executableScript, e);
+        }
+    }
 }
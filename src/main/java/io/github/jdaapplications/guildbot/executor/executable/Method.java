@@ -2,13 +2,16 @@ package io.github.jdaapplications.guildbot.executor.executable;
 
 import io.github.jdaapplications.guildbot.GuildBot;
 import io.github.jdaapplications.guildbot.executor.Engine;
+import io.github.jdaapplications.guildbot.executor.EngineMap;
+import io.github.jdaapplications.guildbot.executor.PreparedScript;
+import io.github.jdaapplications.guildbot.executor.ScriptLimits;
+import io.github.jdaapplications.guildbot.executor.Watchdog;
+import io.github.jdaapplications.guildbot.metrics.MethodMetrics;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
+import javax.script.Bindings;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import org.apache.commons.collections4.map.LazyMap;
@@ -21,6 +24,8 @@ import org.hjson.JsonObject;
  */
 public class Method extends Executable
 {
+    protected final Map<Engine, PreparedScript> compiledScripts;
+    protected final PreparedScript compiledProxyScript;
     protected final Map<Engine, String> executableScripts;
     protected final String name;
     protected final List<Pair<String, ? extends Class<?>>> params;
@@ -62,6 +67,26 @@ public class Method extends Executable
         this.executableScripts = Collections.unmodifiableMap(LazyMap.lazyMap(new HashMap<>(Engine.values().length), e -> e.getProxyMethod(name, this.type, this.params)));
 
         this.proxyScript = this.engine.getScript(this.getScript(), this.imports);
+        this.compiledProxyScript = this.compile(this.engine, this.proxyScript, this.compileStatic);
+
+        final Map<Engine, PreparedScript> compiledScripts = new EnumMap<>(Engine.class);
+        for (final Engine targetEngine : Engine.values())
+        {
+            final String executableScript = this.executableScripts.get(targetEngine);
+            if (executableScript != null)
+                compiledScripts.put(targetEngine, this.compile(targetEngine, executableScript));
+        }
+        this.compiledScripts = Collections.unmodifiableMap(compiledScripts);
+    }
+
+    public PreparedScript getCompiledScript(final Engine targetEngine)
+    {
+        return this.compiledScripts.get(targetEngine);
+    }
+
+    public Map<Engine, PreparedScript> getCompiledScripts()
+    {
+        return this.compiledScripts;
     }
 
     public String getExecutableScript(final Engine targetEngine)
@@ -74,9 +99,9 @@ public class Method extends Executable
         return this.executableScripts;
     }
 
-    public InvokeableMethod getInvokeableMethod(final ScriptContext context)
+    public InvokeableMethod getInvokeableMethod(final EngineMap engines)
     {
-        return args -> Method.this.invoke(context, args);
+        return args -> Method.this.invoke(engines, args);
     }
 
     public String getName()
@@ -99,35 +124,52 @@ public class Method extends Executable
         return this.type;
     }
 
-    protected Object invoke(final ScriptContext context, final Object... args)
+    protected Object invoke(final EngineMap engines, final Object... args)
     {
+        final MethodMetrics metrics = this.guildBot.getMetrics().getMethod(this.name);
+        // the scope is reused by later invocations, unless the method timed out and might still be using it
+        final EngineMap.Scope scope = engines.acquireScope(this.engine);
+        boolean release = true;
         try
         {
-            final ScriptEngine scriptEngine = this.engine.newScriptEngine();
-            scriptEngine.getContext().getBindings(ScriptContext.ENGINE_SCOPE).putAll(context.getBindings(ScriptContext.ENGINE_SCOPE));
-
+            final Bindings bindings = scope.getContext().getBindings(ScriptContext.ENGINE_SCOPE);
             if (args != null)
-                for (int i = 0; i < this.params.size(); i++)
-                    scriptEngine.put(this.params.get(i).getKey(), args[i]);
-
-            final Future<?> future = this.guildBot.getThreadPool().submit(() -> scriptEngine.eval(this.proxyScript));
-
-            final Object result = future.get(this.config.getInt("timeout", this.guildBot.getConfig().getInt("timeout", 5)), TimeUnit.SECONDS);
+                for (int i = 0; i < this.params.size() && i < args.length; i++)
+                    bindings.put(this.params.get(i).getKey(), args[i]);
+
+            final ScriptEngine scriptEngine = engines.get(this.engine);
+
+            // methods run on the thread of their caller, a nested call must not wait for another pool thread
+            final long start = System.nanoTime();
+            final Object result;
+            try
+            {
+                result = Watchdog.call(this.guildBot.getThreadPool(), () -> this.compiledProxyScript.eval(scriptEngine, scope.getContext()),
+                        ScriptLimits.of(this.config, this.guildBot.getConfig()), null);
+            }
+            finally
+            {
+                metrics.recordInvocation(System.nanoTime() - start);
+            }
 
             return this.type == Void.TYPE ? null : result;
         }
-        catch (InterruptedException | TimeoutException e)
+        catch (final TimeoutException e)
         {
+            release = false;
+            metrics.recordTimeout();
             throw new RuntimeException("The execution of method \"" + this.name + "\" timed out\n" + this.proxyScript, e);
         }
-        catch (final ExecutionException e)
-        {
-            throw new RuntimeException("The execution of method \"" + this.name + "\" threw an error\n" + this.proxyScript, e.getCause());
-        }
         catch (final Exception e)
         {
+            metrics.recordError();
             throw new RuntimeException("The execution of method \"" + this.name + "\" threw an error\n" + this.proxyScript, e);
         }
+        finally
+        {
+            if (release)
+                engines.releaseScope(scope);
+        }
     }
 
     @FunctionalInterface
@@ -1,6 +1,9 @@
 package io.github.jdaapplications.guildbot.executor.executable;
 
 import io.github.jdaapplications.guildbot.GuildBot;
+import io.github.jdaapplications.guildbot.executor.EngineMap;
+import io.github.jdaapplications.guildbot.executor.PreparedScript;
+import javax.script.ScriptException;
 import org.hjson.JsonObject;
 
 /**
@@ -8,6 +11,7 @@ import org.hjson.JsonObject;
  */
 public class Variables extends Executable
 {
+    protected final PreparedScript compiledScript;
     protected final String executableScript;
 
     public Variables(final GuildBot guildBot, final JsonObject config, final String script)
@@ -15,6 +19,17 @@ public class Variables extends Executable
         super(guildBot, config, script);
 
         this.executableScript = this.engine.getScript(this.getScript(), this.imports);
+        this.compiledScript = this.compile(this.engine, this.executableScript, this.compileStatic);
+    }
+
+    public Object eval(final EngineMap engines) throws ScriptException
+    {
+        return this.compiledScript.eval(engines.get(this.engine), engines.getContext());
+    }
+
+    public PreparedScript getCompiledScript()
+    {
+        return this.compiledScript;
     }
 
     public String getExecutableScript()
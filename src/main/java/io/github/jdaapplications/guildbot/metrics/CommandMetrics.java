@@ -0,0 +1,145 @@
+package io.github.jdaapplications.guildbot.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of a single command, split into the stages of its execution.
+ *
+ * @author Aljoscha Grebe
+ */
+public class CommandMetrics
+{
+    protected final LatencyHistogram dispatch;
+    protected final LongAdder errors;
+    protected final LatencyHistogram evaluation;
+    protected final LongAdder invocations;
+    protected final LatencyHistogram latency;
+    protected final LatencyHistogram preparation;
+    protected final LatencyHistogram queueWait;
+    protected final LongAdder rejections;
+    protected final LongAdder timeouts;
+
+    public CommandMetrics()
+    {
+        this.invocations = new LongAdder();
+        this.errors = new LongAdder();
+        this.timeouts = new LongAdder();
+        this.rejections = new LongAdder();
+        this.queueWait = new LatencyHistogram();
+        this.preparation = new LatencyHistogram();
+        this.evaluation = new LatencyHistogram();
+        this.dispatch = new LatencyHistogram();
+        this.latency = new LatencyHistogram();
+    }
+
+    /**
+     * Records a finished execution.
+     *
+     * @param queueWait
+     *        The time in nanoseconds the execution waited for a thread
+     * @param preparation
+     *        The time in nanoseconds it took to acquire the engines and to evaluate the methods and vars
+     * @param evaluation
+     *        The time in nanoseconds the command script ran
+     * @param dispatch
+     *        The time in nanoseconds it took to hand the result over to JDA
+     */
+    public void recordExecution(final long queueWait, final long preparation, final long evaluation, final long dispatch)
+    {
+        this.invocations.increment();
+        this.queueWait.record(queueWait);
+        this.preparation.record(preparation);
+        this.evaluation.record(evaluation);
+        this.dispatch.record(dispatch);
+        this.latency.record(queueWait + preparation + evaluation + dispatch);
+    }
+
+    public void recordError()
+    {
+        this.errors.increment();
+    }
+
+    public void recordRejection()
+    {
+        this.rejections.increment();
+    }
+
+    public void recordTimeout()
+    {
+        this.timeouts.increment();
+    }
+
+    public LatencySnapshot getDispatch()
+    {
+        return this.dispatch.snapshot();
+    }
+
+    public long getErrors()
+    {
+        return this.errors.sum();
+    }
+
+    public LatencySnapshot getEvaluation()
+    {
+        return this.evaluation.snapshot();
+    }
+
+    /**
+     * The number of executions which got to evaluate their script, executions rejected before that only count as error or timeout.
+     *
+     * @return The number of invocations
+     */
+    public long getInvocations()
+    {
+        return this.invocations.sum();
+    }
+
+    /**
+     * The time from submitting the execution until its result has been dispatched.
+     *
+     * @return A snapshot of the total latency
+     */
+    public LatencySnapshot getLatency()
+    {
+        return this.latency.snapshot();
+    }
+
+    public LatencySnapshot getPreparation()
+    {
+        return this.preparation.snapshot();
+    }
+
+    public LatencySnapshot getQueueWait()
+    {
+        return this.queueWait.snapshot();
+    }
+
+    /**
+     * The number of invocations which have been rejected by the rate limits or the concurrency limit of the command.
+     *
+     * @return The number of rejections
+     */
+    public long getRejections()
+    {
+        return this.rejections.sum();
+    }
+
+    /**
+     * The number of executions which exceeded their limits or could not get an engine in time.
+     *
+     * @return The number of timeouts
+     */
+    public long getTimeouts()
+    {
+        return this.timeouts.sum();
+    }
+
+    protected void rotate()
+    {
+        this.queueWait.rotate();
+        this.preparation.rotate();
+        this.evaluation.rotate();
+        this.dispatch.rotate();
+        this.latency.rotate();
+    }
+}
@@ -0,0 +1,89 @@
+package io.github.jdaapplications.guildbot.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Records durations without locking and keeps the distribution of the last interval, so percentiles reflect the current latency
+ * instead of everything since the start of the bot. Count and sum are kept for the whole lifetime.
+ *
+ * @author Aljoscha Grebe
+ */
+public class LatencyHistogram
+{
+    protected final LongAdder count;
+    protected final Recorder recorder;
+    protected final LongAdder sum;
+
+    protected volatile Histogram interval;
+
+    public LatencyHistogram()
+    {
+        // values are recorded in microseconds with three significant digits, the histogram resizes itself as needed
+        this.recorder = new Recorder(3);
+        this.interval = new Histogram(3);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+    }
+
+    /**
+     * Records a single duration.
+     *
+     * @param nanos
+     *        The duration in nanoseconds
+     */
+    public void record(final long nanos)
+    {
+        this.recorder.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+        this.count.increment();
+        this.sum.add(nanos);
+    }
+
+    public long getCount()
+    {
+        return this.count.sum();
+    }
+
+    /**
+     * The sum of all recorded durations.
+     *
+     * @param  unit
+     *         The unit of the returned value
+     *
+     * @return The sum
+     */
+    public long getSum(final TimeUnit unit)
+    {
+        return unit.convert(this.sum.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The duration the given percentage of the values recorded in the last interval did not exceed.
+     *
+     * @param  percentile
+     *         The percentile between {@code 0} and {@code 100}
+     *
+     * @return The duration in microseconds, {@code 0} if nothing has been recorded in the last interval
+     */
+    public long getValueAtPercentile(final double percentile)
+    {
+        return this.interval.getValueAtPercentile(percentile);
+    }
+
+    public LatencySnapshot snapshot()
+    {
+        final Histogram interval = this.interval;
+        return new LatencySnapshot(this.getCount(), interval.getTotalCount(), interval.getValueAtPercentile(50), interval.getValueAtPercentile(90),
+                interval.getValueAtPercentile(95), interval.getValueAtPercentile(99), interval.getValueAtPercentile(99.9), interval.getMaxValue());
+    }
+
+    /**
+     * Starts a new interval, the values recorded since the last call become the distribution percentiles are computed from.
+     */
+    protected void rotate()
+    {
+        this.interval = this.recorder.getIntervalHistogram();
+    }
+}
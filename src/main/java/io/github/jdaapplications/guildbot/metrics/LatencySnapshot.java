@@ -0,0 +1,86 @@
+package io.github.jdaapplications.guildbot.metrics;
+
+/**
+ * The percentiles of a {@link LatencyHistogram} at one point in time, all durations are in milliseconds.
+ *
+ * @author Aljoscha Grebe
+ */
+public class LatencySnapshot
+{
+    protected final long count;
+    protected final long intervalCount;
+    protected final double max;
+    protected final double p50;
+    protected final double p90;
+    protected final double p95;
+    protected final double p99;
+    protected final double p999;
+
+    protected LatencySnapshot(final long count, final long intervalCount, final long p50, final long p90, final long p95, final long p99, final long p999, final long max)
+    {
+        this.count = count;
+        this.intervalCount = intervalCount;
+        this.p50 = p50 / 1000.0;
+        this.p90 = p90 / 1000.0;
+        this.p95 = p95 / 1000.0;
+        this.p99 = p99 / 1000.0;
+        this.p999 = p999 / 1000.0;
+        this.max = max / 1000.0;
+    }
+
+    /**
+     * The number of values recorded since the bot has been started.
+     *
+     * @return The total number of values
+     */
+    public long getCount()
+    {
+        return this.count;
+    }
+
+    /**
+     * The number of values the percentiles are computed from.
+     *
+     * @return The number of values of the last interval
+     */
+    public long getIntervalCount()
+    {
+        return this.intervalCount;
+    }
+
+    public double getMax()
+    {
+        return this.max;
+    }
+
+    public double getP50()
+    {
+        return this.p50;
+    }
+
+    public double getP90()
+    {
+        return this.p90;
+    }
+
+    public double getP95()
+    {
+        return this.p95;
+    }
+
+    public double getP99()
+    {
+        return this.p99;
+    }
+
+    public double getP999()
+    {
+        return this.p999;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("p50=%.2fms, p95=%.2fms, p99=%.2fms, max=%.2fms (%d)", this.p50, this.p95, this.p99, this.max, this.intervalCount);
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.jdaapplications.guildbot.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of a single method, counted across all commands which invoke it.
+ *
+ * @author Aljoscha Grebe
+ */
+public class MethodMetrics
+{
+    protected final LatencyHistogram duration;
+    protected final LongAdder errors;
+    protected final LongAdder timeouts;
+
+    public MethodMetrics()
+    {
+        this.duration = new LatencyHistogram();
+        this.errors = new LongAdder();
+        this.timeouts = new LongAdder();
+    }
+
+    /**
+     * Records a single invocation.
+     *
+     * @param nanos
+     *        The time in nanoseconds the method ran
+     */
+    public void recordInvocation(final long nanos)
+    {
+        this.duration.record(nanos);
+    }
+
+    public void recordError()
+    {
+        this.errors.increment();
+    }
+
+    public void recordTimeout()
+    {
+        this.timeouts.increment();
+    }
+
+    public LatencySnapshot getDuration()
+    {
+        return this.duration.snapshot();
+    }
+
+    public long getErrors()
+    {
+        return this.errors.sum();
+    }
+
+    public long getInvocations()
+    {
+        return this.duration.getCount();
+    }
+
+    public long getTimeouts()
+    {
+        return this.timeouts.sum();
+    }
+
+    protected void rotate()
+    {
+        this.duration.rotate();
+    }
+}
@@ -0,0 +1,348 @@
+package io.github.jdaapplications.guildbot.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.jdaapplications.guildbot.GuildBot;
+import io.github.jdaapplications.guildbot.executor.CommandExecutor;
+import io.github.jdaapplications.guildbot.executor.Engine;
+import io.github.jdaapplications.guildbot.executor.EnginePool;
+import io.github.jdaapplications.guildbot.util.ThreadPool;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import net.dv8tion.jda.core.entities.TextChannel;
+import org.hjson.JsonObject;
+
+/**
+ * Collects the latency and error metrics of all commands and methods and the saturation of the executor
+ * and exposes them via JMX and, if a port has been configured, a Prometheus endpoint.
+ *
+ * @author Aljoscha Grebe
+ */
+public class Metrics implements MetricsMXBean
+{
+    public static final String OBJECT_NAME = "io.github.jdaapplications.guildbot:type=Metrics";
+
+    protected static final int RECENT_TIMEOUTS = 20;
+
+    protected final Map<Long, CommandMetrics> commands;
+    protected final JsonObject config;
+    protected final GuildBot guildBot;
+    protected final Map<String, MethodMetrics> methods;
+    protected final Deque<Timeout> recentTimeouts;
+
+    protected HttpServer server;
+
+    public Metrics(final GuildBot guildBot)
+    {
+        this.guildBot = guildBot;
+        this.config = guildBot.getConfig().get("metrics") == null
+                ? new JsonObject()
+                : guildBot.getConfig().get("metrics").asObject();
+
+        this.commands = new ConcurrentHashMap<>();
+        this.methods = new ConcurrentHashMap<>();
+        this.recentTimeouts = new ArrayDeque<>(Metrics.RECENT_TIMEOUTS);
+
+        final long interval = Math.max(1, this.config.getLong("interval", 60));
+        guildBot.getThreadPool().scheduleAtFixedRate(this::rotate, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * The metrics of the command of the given channel.
+     *
+     * @param  channelId
+     *         The id of the channel of the command
+     *
+     * @return The metrics, created on first use
+     */
+    public CommandMetrics getCommand(final long channelId)
+    {
+        return this.commands.computeIfAbsent(channelId, id -> new CommandMetrics());
+    }
+
+    /**
+     * The metrics of all commands by their channel ids.
+     *
+     * @return An unmodifiable view of the metrics
+     */
+    public Map<Long, CommandMetrics> getCommandsById()
+    {
+        return Collections.unmodifiableMap(this.commands);
+    }
+
+    /**
+     * The metrics of the method with the given name.
+     *
+     * @param  name
+     *         The name of the method
+     *
+     * @return The metrics, created on first use
+     */
+    public MethodMetrics getMethod(final String name)
+    {
+        return this.methods.computeIfAbsent(name, n -> new MethodMetrics());
+    }
+
+    /**
+     * The last timeouts of all commands, the newest first.
+     *
+     * @return A copy of the recent timeouts
+     */
+    public List<Timeout> getRecentTimeouts()
+    {
+        synchronized (this.recentTimeouts)
+        {
+            return new ArrayList<>(this.recentTimeouts);
+        }
+    }
+
+    /**
+     * Counts a timeout of the given command and remembers it as one of the recent timeouts.
+     *
+     * @param channelId
+     *        The id of the channel of the command
+     * @param reason
+     *        The limit the command exceeded
+     */
+    public void recordTimeout(final long channelId, final String reason)
+    {
+        this.getCommand(channelId).recordTimeout();
+        synchronized (this.recentTimeouts)
+        {
+            if (this.recentTimeouts.size() == Metrics.RECENT_TIMEOUTS)
+                this.recentTimeouts.removeLast();
+            this.recentTimeouts.addFirst(new Timeout(channelId, System.currentTimeMillis(), reason));
+        }
+    }
+
+    /**
+     * The metrics of all commands keyed by {@code name#id} of their channel, channels may share a name.
+     *
+     * @return A copy of the metrics of all commands
+     */
+    @Override
+    public Map<String, CommandMetrics> getCommands()
+    {
+        final Map<String, CommandMetrics> commands = new HashMap<>(this.commands.size());
+        this.commands.forEach((id, metrics) -> commands.put(this.getCommandName(id) + '#' + id, metrics));
+        return commands;
+    }
+
+    /**
+     * The name of the channel of a command, resolved when the metrics are read so renamed channels don't split their metrics.
+     *
+     * @param  channelId
+     *         The id of the channel
+     *
+     * @return The name of the channel, or its id if it does not exist anymore
+     */
+    public String getCommandName(final long channelId)
+    {
+        final TextChannel channel = this.guildBot.getJDA().getTextChannelById(channelId);
+        return channel == null ? Long.toString(channelId) : channel.getName();
+    }
+
+    @Override
+    public int getEnginePoolIdle()
+    {
+        final EnginePool pool = this.getEnginePool();
+        return pool == null ? 0 : pool.getIdle();
+    }
+
+    @Override
+    public int getEnginePoolMax()
+    {
+        final EnginePool pool = this.getEnginePool();
+        return pool == null ? 0 : pool.getMax();
+    }
+
+    @Override
+    public int getEnginePoolSize()
+    {
+        final EnginePool pool = this.getEnginePool();
+        return pool == null ? 0 : pool.getSize();
+    }
+
+    @Override
+    public long getEnginePoolWaits()
+    {
+        final EnginePool pool = this.getEnginePool();
+        return pool == null ? 0 : pool.getWaits();
+    }
+
+    @Override
+    public int getExecutorActiveThreads()
+    {
+        return this.guildBot.getThreadPool().getActiveCount();
+    }
+
+    @Override
+    public int getExecutorQuarantinedThreads()
+    {
+        return this.guildBot.getThreadPool().getQuarantinedCount();
+    }
+
+    @Override
+    public long getExecutorQueueSize()
+    {
+        return this.guildBot.getThreadPool().getQueueSize();
+    }
+
+    @Override
+    public long getExecutorBackgroundQueueSize()
+    {
+        return this.guildBot.getThreadPool().getQueueSize(ThreadPool.Priority.BACKGROUND);
+    }
+
+    @Override
+    public long getExecutorReportingQueueSize()
+    {
+        return this.guildBot.getThreadPool().getQueueSize(ThreadPool.Priority.REPORTING);
+    }
+
+    @Override
+    public long getGroovyClassCacheEvictions()
+    {
+        return Engine.GROOVY_CLASS_CACHE.getEvictions();
+    }
+
+    @Override
+    public long getGroovyClassCacheHits()
+    {
+        return Engine.GROOVY_CLASS_CACHE.getHits();
+    }
+
+    @Override
+    public long getGroovyClassCacheMisses()
+    {
+        return Engine.GROOVY_CLASS_CACHE.getMisses();
+    }
+
+    @Override
+    public int getGroovyClassCacheSize()
+    {
+        return Engine.GROOVY_CLASS_CACHE.getSize();
+    }
+
+    /**
+     * The number of classes currently loaded by the jvm, stays flat once the caches are warm unless scripts leak classes.
+     *
+     * @return The number of loaded classes
+     */
+    @Override
+    public int getLoadedClasses()
+    {
+        return ManagementFactory.getClassLoadingMXBean().getLoadedClassCount();
+    }
+
+    @Override
+    public long getUnloadedClasses()
+    {
+        return ManagementFactory.getClassLoadingMXBean().getUnloadedClassCount();
+    }
+
+    @Override
+    public Map<String, MethodMetrics> getMethods()
+    {
+        return new HashMap<>(this.methods);
+    }
+
+    protected EnginePool getEnginePool()
+    {
+        final CommandExecutor executor = this.guildBot.getCommandExecutor();
+        return executor == null ? null : executor.getEnginePool();
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server and starts the Prometheus endpoint if {@code metrics.port} is set.
+     */
+    public void start()
+    {
+        try
+        {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+            if (!server.isRegistered(name))
+                server.registerMBean(this, name);
+        }
+        catch (final JMException e)
+        {
+            GuildBot.log.error("Could not register the metrics with JMX", e);
+        }
+
+        final int port = this.config.getInt("port", 0);
+        if (port <= 0)
+            return;
+
+        try
+        {
+            this.server = HttpServer.create(new InetSocketAddress(this.config.getString("host", "127.0.0.1"), port), 0);
+            this.server.createContext("/metrics", new PrometheusHandler(this));
+            // scrapes are rare and cheap, a single thread of the server is enough
+            this.server.start();
+            GuildBot.log.info("Serving metrics on {}", this.server.getAddress());
+        }
+        catch (final IOException e)
+        {
+            GuildBot.log.error("Could not start the metrics endpoint", e);
+        }
+    }
+
+    public void stop()
+    {
+        if (this.server != null)
+            this.server.stop(0);
+    }
+
+    protected void rotate()
+    {
+        this.commands.values().forEach(CommandMetrics::rotate);
+        this.methods.values().forEach(MethodMetrics::rotate);
+    }
+
+    public static class Timeout
+    {
+        protected final long channelId;
+        protected final String reason;
+        protected final long time;
+
+        protected Timeout(final long channelId, final long time, final String reason)
+        {
+            this.channelId = channelId;
+            this.time = time;
+            this.reason = reason;
+        }
+
+        public long getChannelId()
+        {
+            return this.channelId;
+        }
+
+        public String getReason()
+        {
+            return this.reason;
+        }
+
+        /**
+         * The time of the timeout.
+         *
+         * @return The time in milliseconds since the epoch
+         */
+        public long getTime()
+        {
+            return this.time;
+        }
+    }
+}
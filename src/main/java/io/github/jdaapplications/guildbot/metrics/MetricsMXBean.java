@@ -0,0 +1,45 @@
+package io.github.jdaapplications.guildbot.metrics;
+
+import java.util.Map;
+
+/**
+ * The metrics of the bot as exposed via JMX, registered as {@value Metrics#OBJECT_NAME}.
+ *
+ * @author Aljoscha Grebe
+ */
+public interface MetricsMXBean
+{
+    Map<String, CommandMetrics> getCommands();
+
+    int getEnginePoolIdle();
+
+    int getEnginePoolMax();
+
+    int getEnginePoolSize();
+
+    long getEnginePoolWaits();
+
+    int getExecutorActiveThreads();
+
+    int getExecutorQuarantinedThreads();
+
+    long getExecutorQueueSize();
+
+    long getExecutorBackgroundQueueSize();
+
+    long getExecutorReportingQueueSize();
+
+    long getGroovyClassCacheEvictions();
+
+    long getGroovyClassCacheHits();
+
+    long getGroovyClassCacheMisses();
+
+    int getGroovyClassCacheSize();
+
+    int getLoadedClasses();
+
+    long getUnloadedClasses();
+
+    Map<String, MethodMetrics> getMethods();
+}
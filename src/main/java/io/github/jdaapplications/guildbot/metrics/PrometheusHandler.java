@@ -0,0 +1,155 @@
+package io.github.jdaapplications.guildbot.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import io.github.jdaapplications.guildbot.executor.EnginePool;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Serves the {@link Metrics} in the Prometheus text format.
+ * <br>Latencies are exported as summaries whose quantiles cover the last {@code metrics.interval} seconds.
+ *
+ * @author Aljoscha Grebe
+ */
+public class PrometheusHandler implements HttpHandler
+{
+    protected static final double[] QUANTILES = { 0.5, 0.9, 0.95, 0.99, 0.999 };
+
+    protected final Metrics metrics;
+
+    public PrometheusHandler(final Metrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void handle(final HttpExchange exchange) throws IOException
+    {
+        final byte[] body = this.scrape().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (final OutputStream out = exchange.getResponseBody())
+        {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Renders all metrics.
+     *
+     * @return The metrics in the Prometheus text format
+     */
+    public String scrape()
+    {
+        final StringBuilder builder = new StringBuilder(4096);
+
+        final Map<Long, CommandMetrics> commands = this.metrics.getCommandsById();
+        this.counter(builder, "guildbot_command_invocations_total", "Executions which evaluated their script", "command", commands, CommandMetrics::getInvocations);
+        this.counter(builder, "guildbot_command_errors_total", "Executions which failed", "command", commands, CommandMetrics::getErrors);
+        this.counter(builder, "guildbot_command_timeouts_total", "Executions which exceeded their limits or got no engine in time", "command", commands, CommandMetrics::getTimeouts);
+        this.counter(builder, "guildbot_command_rejections_total", "Invocations rejected by the rate limits or the concurrency limit", "command", commands, CommandMetrics::getRejections);
+        this.summary(builder, "guildbot_command_latency_seconds", "Time from submitting an execution until its result has been dispatched", "command", commands, m -> m.latency);
+        this.summary(builder, "guildbot_command_queue_wait_seconds", "Time waited for a thread", "command", commands, m -> m.queueWait);
+        this.summary(builder, "guildbot_command_preparation_seconds", "Time spent acquiring engines and evaluating methods and vars", "command", commands, m -> m.preparation);
+        this.summary(builder, "guildbot_command_evaluation_seconds", "Time spent evaluating the command script", "command", commands, m -> m.evaluation);
+        this.summary(builder, "guildbot_command_dispatch_seconds", "Time spent handing the result over to JDA", "command", commands, m -> m.dispatch);
+
+        final Map<String, MethodMetrics> methods = this.metrics.getMethods();
+        this.counter(builder, "guildbot_method_errors_total", "Method invocations which failed", "method", methods, MethodMetrics::getErrors);
+        this.counter(builder, "guildbot_method_timeouts_total", "Method invocations which exceeded their limits", "method", methods, MethodMetrics::getTimeouts);
+        this.summary(builder, "guildbot_method_duration_seconds", "Time spent in a method", "method", methods, m -> m.duration);
+
+        this.gauge(builder, "guildbot_executor_queue_size", "Tasks waiting for a thread", this.metrics.getExecutorQueueSize());
+        this.gauge(builder, "guildbot_executor_background_queue_size", "Reloads and compilations waiting for a thread", this.metrics.getExecutorBackgroundQueueSize());
+        this.gauge(builder, "guildbot_executor_reporting_queue_size", "Error reports waiting for a thread", this.metrics.getExecutorReportingQueueSize());
+        this.gauge(builder, "guildbot_executor_active_threads", "Threads running a task", this.metrics.getExecutorActiveThreads());
+        this.gauge(builder, "guildbot_executor_quarantined_threads", "Threads stuck in a script which ignored its interrupt", this.metrics.getExecutorQuarantinedThreads());
+
+        this.gauge(builder, "guildbot_groovy_class_cache_size", "Compiled groovy classes in the cache", this.metrics.getGroovyClassCacheSize());
+        this.type(builder, "guildbot_groovy_class_cache_hits_total", "Groovy compilations served from the cache", "counter");
+        builder.append("guildbot_groovy_class_cache_hits_total ").append(this.metrics.getGroovyClassCacheHits()).append('\n');
+        this.type(builder, "guildbot_groovy_class_cache_misses_total", "Groovy compilations which defined a new class", "counter");
+        builder.append("guildbot_groovy_class_cache_misses_total ").append(this.metrics.getGroovyClassCacheMisses()).append('\n');
+        this.type(builder, "guildbot_groovy_class_cache_evictions_total", "Groovy classes evicted from the cache", "counter");
+        builder.append("guildbot_groovy_class_cache_evictions_total ").append(this.metrics.getGroovyClassCacheEvictions()).append('\n');
+        this.gauge(builder, "jvm_classes_loaded", "Classes currently loaded by the jvm", this.metrics.getLoadedClasses());
+        this.type(builder, "jvm_classes_unloaded_total", "Classes unloaded since the jvm started", "counter");
+        builder.append("jvm_classes_unloaded_total ").append(this.metrics.getUnloadedClasses()).append('\n');
+
+        final EnginePool pool = this.metrics.getEnginePool();
+        if (pool != null)
+        {
+            this.gauge(builder, "guildbot_engine_pool_size", "Engine maps in use or idle", pool.getSize());
+            this.gauge(builder, "guildbot_engine_pool_idle", "Idle engine maps", pool.getIdle());
+            this.gauge(builder, "guildbot_engine_pool_max", "Maximum number of engine maps", pool.getMax());
+            this.type(builder, "guildbot_engine_pool_waits_total", "Acquisitions which had to wait for a free engine map", "counter");
+            builder.append("guildbot_engine_pool_waits_total ").append(pool.getWaits()).append('\n');
+            this.type(builder, "guildbot_engine_pool_wait_seconds_total", "Time spent waiting for a free engine map", "counter");
+            builder.append("guildbot_engine_pool_wait_seconds_total ").append(pool.getWaitTime(TimeUnit.MICROSECONDS) / 1e6).append('\n');
+        }
+
+        return builder.toString();
+    }
+
+    protected <K, M> void counter(final StringBuilder builder, final String name, final String help, final String label, final Map<K, M> metrics, final Function<M, Long> value)
+    {
+        this.type(builder, name, help, "counter");
+        metrics.forEach((key, m) -> builder.append(name).append('{').append(this.labels(label, key)).append("} ")
+                .append(value.apply(m)).append('\n'));
+    }
+
+    protected void gauge(final StringBuilder builder, final String name, final String help, final long value)
+    {
+        this.type(builder, name, help, "gauge");
+        builder.append(name).append(' ').append(value).append('\n');
+    }
+
+    protected <K, M> void summary(final StringBuilder builder, final String name, final String help, final String label, final Map<K, M> metrics, final Function<M, LatencyHistogram> histogram)
+    {
+        this.type(builder, name, help, "summary");
+        metrics.forEach((key, m) ->
+        {
+            final LatencyHistogram h = histogram.apply(m);
+            final String labels = this.labels(label, key);
+            for (final double quantile : PrometheusHandler.QUANTILES)
+                builder.append(name).append('{').append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+                        .append(h.getValueAtPercentile(quantile * 100) / 1e6).append('\n');
+            builder.append(name).append("_sum{").append(labels).append("} ").append(h.getSum(TimeUnit.MICROSECONDS) / 1e6).append('\n');
+            builder.append(name).append("_count{").append(labels).append("} ").append(h.getCount()).append('\n');
+        });
+    }
+
+    protected void type(final StringBuilder builder, final String name, final String help, final String type)
+    {
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * The labels of the given key, commands are keyed by the id of their channel which is exported next to its name,
+     * as several channels may share a name.
+     *
+     * @param  label
+     *         The name of the label holding the name of the key
+     * @param  key
+     *         The key of the metrics
+     *
+     * @return The labels without the surrounding braces
+     */
+    protected String labels(final String label, final Object key)
+    {
+        if (key instanceof Long)
+            return label + "=\"" + this.escape(this.metrics.getCommandName((Long) key)) + "\",channel_id=\"" + key + '"';
+        return label + "=\"" + this.escape(String.valueOf(key)) + '"';
+    }
+
+    protected String escape(final String value)
+    {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -13,6 +13,11 @@ public class GuildBotUtils
 
     public static JsonObject readConfig(final TextChannel channel)
     {
-        return channel.getTopic() == null || channel.getTopic().isEmpty() ? new JsonObject() : JsonValue.readHjson(channel.getTopic()).asObject();
+        return GuildBotUtils.readConfig(channel.getTopic());
+    }
+
+    public static JsonObject readConfig(final String topic)
+    {
+        return topic == null || topic.isEmpty() ? new JsonObject() : JsonValue.readHjson(topic).asObject();
     }
 }
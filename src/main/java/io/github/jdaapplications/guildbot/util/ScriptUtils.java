@@ -0,0 +1,275 @@
+package io.github.jdaapplications.guildbot.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class ScriptUtils
+{
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][\\w$]*");
+    // statements whose end can't be found by looking for their semicolon
+    private static final Set<String> BLOCK_STATEMENTS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "class", "do", "else", "for", "function", "if", "switch", "synchronized", "try", "while")));
+
+    /**
+     * Finds every word of the script which could be the name of a variable or a method.
+     * <br>String literals and comments are not skipped, so the result may contain more names than the script actually uses.
+     *
+     * @param  script
+     *         The script to analyse
+     *
+     * @return An unmodifiable set of names
+     */
+    public static Set<String> getIdentifiers(final String script)
+    {
+        final Set<String> identifiers = new HashSet<>();
+        final Matcher matcher = ScriptUtils.IDENTIFIER.matcher(script);
+        while (matcher.find())
+            identifiers.add(matcher.group());
+        return Collections.unmodifiableSet(identifiers);
+    }
+
+    /**
+     * Computes the SHA-256 hash of a script, used to tell whether the script of a channel changed.
+     *
+     * @param  script
+     *         The script to hash
+     *
+     * @return The hash as lower case hex string
+     */
+    public static String hash(final String script)
+    {
+        try
+        {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(script.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (final byte b : digest)
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return builder.toString();
+        }
+        catch (final NoSuchAlgorithmException e)
+        {
+            // every jvm has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Inserts the given statement at the start of the body of every {@code for}, {@code while} and {@code do} loop,
+     * used to make loops of engines without interrupt checks of their own stop once their thread gets interrupted.
+     * <br>Loops whose body is a single statement without braces, including empty bodies like {@code while (true);}, get braces around their body.
+     * Strings and comments are skipped. Bodies without braces which span multiple lines, lack their semicolon or start with another block statement like {@code if}
+     * are left untouched, as the end of such a statement can't be found without parsing the script.
+     *
+     * @param  script
+     *         The script to instrument
+     * @param  statement
+     *         The statement to insert, including its semicolon
+     *
+     * @return The instrumented script
+     */
+    public static String injectLoopChecks(final String script, final String statement)
+    {
+        final StringBuilder builder = new StringBuilder(script.length() + 64);
+        final int length = script.length();
+
+        // the depths of the braces of do loops, so the while which ends a do loop doesn't get mistaken for a loop of its own
+        final Deque<Integer> doDepths = new ArrayDeque<>();
+        int depth = 0;
+        boolean doTail = false;
+
+        int i = 0;
+        while (i < length)
+        {
+            final char c = script.charAt(i);
+
+            if (c == '"' || c == '\'' || c == '`')
+            {
+                final int end = ScriptUtils.skipString(script, i);
+                builder.append(script, i, end);
+                i = end;
+            }
+            else if (c == '/' && i + 1 < length && (script.charAt(i + 1) == '/' || script.charAt(i + 1) == '*'))
+            {
+                final int end = ScriptUtils.skipComment(script, i);
+                builder.append(script, i, end);
+                i = end;
+            }
+            else if (Character.isJavaIdentifierStart(c) && (i == 0 || !Character.isJavaIdentifierPart(script.charAt(i - 1))))
+            {
+                int end = i + 1;
+                while (end < length && Character.isJavaIdentifierPart(script.charAt(end)))
+                    end++;
+                final String word = script.substring(i, end);
+
+                final boolean isDoTail = doTail && word.equals("while");
+                doTail = false;
+
+                int body = -1;
+                if (word.equals("do"))
+                    body = ScriptUtils.skipWhitespace(script, end);
+                else if ((word.equals("for") || word.equals("while")) && !isDoTail)
+                {
+                    final int open = ScriptUtils.skipWhitespace(script, end);
+                    if (open < length && script.charAt(open) == '(')
+                        body = ScriptUtils.skipWhitespace(script, ScriptUtils.skipParentheses(script, open));
+                }
+
+                if (body >= 0 && body < length && script.charAt(body) == '{')
+                {
+                    if (word.equals("do"))
+                        doDepths.push(depth);
+                    depth++;
+                    builder.append(script, i, body + 1).append(' ').append(statement);
+                    i = body + 1;
+                    continue;
+                }
+
+                final int statementEnd = body >= 0 && body < length ? ScriptUtils.findStatementEnd(script, body) : -1;
+                if (statementEnd >= 0)
+                {
+                    builder.append(script, i, body).append("{ ").append(statement).append(' ')
+                            .append(ScriptUtils.injectLoopChecks(script.substring(body, statementEnd), statement)).append(" }");
+                    i = statementEnd;
+                    doTail = word.equals("do");
+                }
+                else
+                {
+                    builder.append(word);
+                    i = end;
+                }
+            }
+            else
+            {
+                if (c == '{')
+                    depth++;
+                else if (c == '}')
+                {
+                    depth--;
+                    if (!doDepths.isEmpty() && doDepths.peek() == depth)
+                    {
+                        doDepths.pop();
+                        doTail = true;
+                    }
+                }
+                else if (!Character.isWhitespace(c))
+                    doTail = false;
+
+                builder.append(c);
+                i++;
+            }
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Finds the end of a simple statement which is the body of a loop without braces.
+     *
+     * @return The index after its semicolon or {@code -1} if the statement is no simple statement or doesn't end on the line it started on
+     */
+    private static int findStatementEnd(final String script, final int start)
+    {
+        int end = start;
+        while (end < script.length() && Character.isJavaIdentifierPart(script.charAt(end)))
+            end++;
+        if (ScriptUtils.BLOCK_STATEMENTS.contains(script.substring(start, end)))
+            return -1;
+
+        int depth = 0;
+        int i = start;
+        while (i < script.length())
+        {
+            final char c = script.charAt(i);
+            if (c == '"' || c == '\'' || c == '`')
+            {
+                i = ScriptUtils.skipString(script, i);
+                continue;
+            }
+            if (c == '/' && i + 1 < script.length() && (script.charAt(i + 1) == '/' || script.charAt(i + 1) == '*'))
+            {
+                i = ScriptUtils.skipComment(script, i);
+                continue;
+            }
+
+            if (c == '(' || c == '[' || c == '{')
+                depth++;
+            else if (c == ')' || c == ']' || c == '}')
+                depth--;
+            else if (c == ';' && depth == 0)
+                return i + 1;
+            // javascript may end a statement at the end of a line without a semicolon
+            else if (c == '\n' && depth == 0)
+                return -1;
+
+            if (depth < 0)
+                return -1;
+            i++;
+        }
+        return -1;
+    }
+
+    private static int skipComment(final String script, final int start)
+    {
+        if (script.charAt(start + 1) == '/')
+        {
+            final int end = script.indexOf('\n', start);
+            return end < 0 ? script.length() : end;
+        }
+        final int end = script.indexOf("*/", start + 2);
+        return end < 0 ? script.length() : end + 2;
+    }
+
+    private static int skipParentheses(final String script, final int start)
+    {
+        int depth = 0;
+        int i = start;
+        while (i < script.length())
+        {
+            final char c = script.charAt(i);
+            if (c == '"' || c == '\'' || c == '`')
+            {
+                i = ScriptUtils.skipString(script, i);
+                continue;
+            }
+            if (c == '(')
+                depth++;
+            else if (c == ')' && --depth == 0)
+                return i + 1;
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipString(final String script, final int start)
+    {
+        final char quote = script.charAt(start);
+        int i = start + 1;
+        while (i < script.length())
+        {
+            final char c = script.charAt(i);
+            if (c == '\\')
+                i++;
+            else if (c == quote)
+                return i + 1;
+            i++;
+        }
+        return script.length();
+    }
+
+    private static int skipWhitespace(final String script, final int start)
+    {
+        int i = start;
+        while (i < script.length() && Character.isWhitespace(script.charAt(i)))
+            i++;
+        return i;
+    }
+}
@@ -0,0 +1,675 @@
+package io.github.jdaapplications.guildbot.util;
+
+import io.github.jdaapplications.guildbot.GuildBot;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.hjson.JsonObject;
+
+/**
+ * The executor all work of the bot runs on.
+ * <br>Tasks run on the pool selected by the {@code executor} section of the config, scheduled tasks are timed by a single scheduler thread
+ * and handed over to the pool or the lane they have been scheduled on once they are due, so a slow task can't delay the other timers.
+ * Only the timers of the bot itself, which do something cheap like interrupting a thread, run on the scheduler thread, see {@link #scheduleTimer(Runnable, long, TimeUnit)}.
+ * <br>Tasks of a lower {@link Priority} than {@link Priority#INTERACTIVE INTERACTIVE} wait in their own queue and only a limited number of them
+ * is handed to the pool at once, so a burst of reloads or error reports can't occupy every thread and commands keep their latency.
+ */
+public class ThreadPool extends AbstractExecutorService implements ScheduledExecutorService
+{
+    protected final Lane background;
+    protected final int maxQuarantined;
+    protected final Mode mode;
+    protected final ExecutorService pool;
+    protected final Set<Thread> quarantined;
+    protected final Lane reporting;
+    protected final ScheduledThreadPoolExecutor scheduler;
+
+    public ThreadPool(final JsonObject config, final Thread.UncaughtExceptionHandler handler)
+    {
+        final AtomicInteger threadCounter = new AtomicInteger(0);
+        this.quarantined = ConcurrentHashMap.newKeySet();
+
+        this.scheduler = new ScheduledThreadPoolExecutor(1, r ->
+        {
+            final Thread t = new Thread(r, "GuildBot-Scheduler");
+            t.setDaemon(true);
+            t.setUncaughtExceptionHandler(handler);
+            return t;
+        });
+        // most timeouts get cancelled, don't keep them in the queue until they would have fired
+        this.scheduler.setRemoveOnCancelPolicy(true);
+
+        Mode mode = Mode.of(config.getString("mode", "platform"));
+        final int threads = config.getInt("threads", 4);
+
+        ExecutorService pool = null;
+        if (mode == Mode.VIRTUAL)
+        {
+            pool = ThreadPool.newVirtualThreadPerTaskExecutor(handler);
+            if (pool == null)
+            {
+                GuildBot.log.warn("Virtual threads require Java 21 or newer, falling back to platform threads");
+                mode = Mode.PLATFORM;
+            }
+        }
+
+        if (mode == Mode.WORK_STEALING)
+        {
+            pool = new ForkJoinPool(threads, p ->
+            {
+                final ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                t.setName("GuildBot-" + threadCounter.getAndIncrement());
+                return t;
+            }, handler, true);
+        }
+        else if (mode == Mode.PLATFORM)
+        {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), r ->
+            {
+                final Thread t = new Thread(r, "GuildBot-" + threadCounter.getAndIncrement());
+                t.setUncaughtExceptionHandler(handler);
+                return t;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            pool = executor;
+        }
+
+        this.mode = mode;
+        this.pool = pool;
+        this.maxQuarantined = config.getInt("maxQuarantined", threads);
+
+        this.background = new Lane(config.getInt("background", Math.max(1, threads / 2)));
+        this.reporting = new Lane(config.getInt("reporting", 1));
+
+        GuildBot.log.info("Using {} threads for script execution, at most {} of them for background work", mode.getName(), this.background.maxThreads);
+    }
+
+    protected static ExecutorService newVirtualThreadPerTaskExecutor(final Thread.UncaughtExceptionHandler handler)
+    {
+        try
+        {
+            // reflection keeps us compatible with Java 8
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "GuildBot-Virtual-", 0L);
+            builder = builderClass.getMethod("uncaughtExceptionHandler", Thread.UncaughtExceptionHandler.class).invoke(builder, handler);
+            final ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+            final Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) method.invoke(null, factory);
+        }
+        catch (final ReflectiveOperationException e)
+        {
+            return null;
+        }
+    }
+
+    public Mode getMode()
+    {
+        return this.mode;
+    }
+
+    /**
+     * The number of tasks waiting for a thread, including the tasks waiting in the queues of lower priorities.
+     *
+     * @return The number of queued tasks
+     */
+    public long getQueueSize()
+    {
+        return this.getQueueSize(Priority.INTERACTIVE) + this.getQueueSize(Priority.BACKGROUND) + this.getQueueSize(Priority.REPORTING);
+    }
+
+    /**
+     * The number of tasks of the given priority waiting for a thread.
+     * <br>Tasks which have already been handed to the pool count as {@link Priority#INTERACTIVE INTERACTIVE}, the pool can't tell them apart.
+     *
+     * @param  priority
+     *         The priority
+     *
+     * @return The number of queued tasks, always {@code 0} for interactive tasks on virtual threads
+     */
+    public long getQueueSize(final Priority priority)
+    {
+        if (priority == Priority.BACKGROUND)
+            return this.background.queued.get();
+        if (priority == Priority.REPORTING)
+            return this.reporting.queued.get();
+        if (this.pool instanceof ThreadPoolExecutor)
+            return ((ThreadPoolExecutor) this.pool).getQueue().size();
+        if (this.pool instanceof ForkJoinPool)
+            return ((ForkJoinPool) this.pool).getQueuedSubmissionCount() + ((ForkJoinPool) this.pool).getQueuedTaskCount();
+        return 0;
+    }
+
+    /**
+     * The number of threads currently running a task, {@code -1} if the pool can't tell.
+     *
+     * @return The number of active threads
+     */
+    public int getActiveCount()
+    {
+        if (this.pool instanceof ThreadPoolExecutor)
+            return ((ThreadPoolExecutor) this.pool).getActiveCount();
+        if (this.pool instanceof ForkJoinPool)
+            return ((ForkJoinPool) this.pool).getActiveThreadCount();
+        return -1;
+    }
+
+    /**
+     * The number of threads which are stuck in a script which ignored its interrupt.
+     *
+     * @return The number of quarantined threads
+     */
+    public int getQuarantinedCount()
+    {
+        return this.quarantined.size();
+    }
+
+    /**
+     * Whether the pool already replaced as many stuck threads as it may, see {@link #quarantine(Thread)}.
+     *
+     * @return {@code true} if further stuck threads won't be replaced
+     */
+    public boolean isQuarantineFull()
+    {
+        return this.quarantined.size() >= this.maxQuarantined;
+    }
+
+    /**
+     * Replaces the given thread of the pool with a new one, as it is stuck in a script which ignored its interrupt.
+     * <br>At most {@code executor.maxQuarantined} threads get replaced, further stuck threads keep their place in the pool,
+     * the caller has to keep the work which got them stuck away from the pool instead.
+     * Pools which are not bounded or can't grow do nothing.
+     *
+     * @param  thread
+     *         The stuck thread
+     *
+     * @return {@code true} if the thread got replaced
+     */
+    public synchronized boolean quarantine(final Thread thread)
+    {
+        if (!(this.pool instanceof ThreadPoolExecutor) || this.isQuarantineFull() || !this.quarantined.add(thread))
+            return false;
+        this.resize(1);
+        return true;
+    }
+
+    /**
+     * Removes the additional thread added by {@link #quarantine(Thread)} once the quarantined thread is usable again.
+     *
+     * @param thread
+     *        The thread which finished its script
+     */
+    public synchronized void release(final Thread thread)
+    {
+        if (this.quarantined.remove(thread))
+            this.resize(-1);
+    }
+
+    protected synchronized void resize(final int delta)
+    {
+        final ThreadPoolExecutor executor = (ThreadPoolExecutor) this.pool;
+        // the core size must never exceed the maximum size
+        if (delta > 0)
+        {
+            executor.setMaximumPoolSize(executor.getMaximumPoolSize() + delta);
+            executor.setCorePoolSize(executor.getCorePoolSize() + delta);
+        }
+        else
+        {
+            executor.setCorePoolSize(executor.getCorePoolSize() + delta);
+            executor.setMaximumPoolSize(executor.getMaximumPoolSize() + delta);
+        }
+    }
+
+    /**
+     * Runs the given task with {@link Priority#INTERACTIVE INTERACTIVE} priority.
+     *
+     * @param command
+     *        The task
+     */
+    @Override
+    public void execute(final Runnable command)
+    {
+        this.pool.execute(command);
+    }
+
+    /**
+     * An executor which runs all of its tasks with the given priority, scheduled tasks are still timed by the scheduler thread of this pool.
+     *
+     * @param  priority
+     *         The priority of the tasks
+     *
+     * @return The executor
+     */
+    public ScheduledExecutorService getExecutor(final Priority priority)
+    {
+        if (priority == Priority.BACKGROUND)
+            return this.background;
+        if (priority == Priority.REPORTING)
+            return this.reporting;
+        return this;
+    }
+
+    /**
+     * Runs the given task with the given priority.
+     *
+     * @param priority
+     *        The priority of the task
+     * @param command
+     *        The task
+     */
+    public void execute(final Priority priority, final Runnable command)
+    {
+        this.getExecutor(priority).execute(command);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(final Runnable command, final long delay, final TimeUnit unit)
+    {
+        return this.handOff(this, Executors.callable(command), false, delay, 0, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(final Callable<V> callable, final long delay, final TimeUnit unit)
+    {
+        return this.handOff(this, callable, false, delay, 0, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(final Runnable command, final long initialDelay, final long period, final TimeUnit unit)
+    {
+        return this.handOff(this, Executors.callable(command), true, initialDelay, period, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(final Runnable command, final long initialDelay, final long delay, final TimeUnit unit)
+    {
+        return this.handOff(this, Executors.callable(command), true, initialDelay, -delay, unit);
+    }
+
+    /**
+     * Runs the given task on the scheduler thread once the delay elapsed.
+     * <br>Every other timer waits for this task, so it must only do something cheap like interrupting a thread or handing work over to the pool.
+     *
+     * @param  command
+     *         The task
+     * @param  delay
+     *         The time until the task runs
+     * @param  unit
+     *         The unit of the delay
+     *
+     * @return The future of the timer
+     */
+    public ScheduledFuture<?> scheduleTimer(final Runnable command, final long delay, final TimeUnit unit)
+    {
+        return this.scheduler.schedule(command, delay, unit);
+    }
+
+    /**
+     * Runs the given task on the scheduler thread periodically, see {@link #scheduleTimer(Runnable, long, TimeUnit)}.
+     *
+     * @param  command
+     *         The task
+     * @param  initialDelay
+     *         The time until the task runs for the first time
+     * @param  period
+     *         The time between the starts of two runs
+     * @param  unit
+     *         The unit of the delay and period
+     *
+     * @return The future of the timer
+     */
+    public ScheduledFuture<?> scheduleTimerAtFixedRate(final Runnable command, final long initialDelay, final long period, final TimeUnit unit)
+    {
+        return this.scheduler.scheduleAtFixedRate(command, initialDelay, period, unit);
+    }
+
+    /**
+     * Times the given task on the scheduler thread and hands it over to the given executor once it is due.
+     *
+     * @param  executor
+     *         The executor to run the task on
+     * @param  callable
+     *         The task
+     * @param  periodic
+     *         Whether the task is repeated
+     * @param  delay
+     *         The time until the task is handed over for the first time
+     * @param  period
+     *         The period of a task repeated at a fixed rate, the negated delay of one repeated with a fixed delay
+     * @param  unit
+     *         The unit of the delay and period
+     *
+     * @return A future which tracks the task, not the hand-over
+     */
+    protected <V> ScheduledFuture<V> handOff(final Executor executor, final Callable<V> callable, final boolean periodic, final long delay, final long period, final TimeUnit unit)
+    {
+        final HandOff<V> task = new HandOff<>(executor, callable, periodic);
+        if (!periodic)
+            task.timer = this.scheduler.schedule(task::handOver, delay, unit);
+        else if (period > 0)
+            task.timer = this.scheduler.scheduleAtFixedRate(task::handOver, delay, period, unit);
+        else
+            task.timer = this.scheduler.scheduleWithFixedDelay(task::handOver, delay, -period, unit);
+        return task;
+    }
+
+    @Override
+    public void shutdown()
+    {
+        this.scheduler.shutdown();
+        this.pool.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow()
+    {
+        final List<Runnable> tasks = this.scheduler.shutdownNow();
+        tasks.addAll(this.pool.shutdownNow());
+        this.background.clear(tasks);
+        this.reporting.clear(tasks);
+        return tasks;
+    }
+
+    @Override
+    public boolean isShutdown()
+    {
+        return this.pool.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated()
+    {
+        return this.pool.isTerminated() && this.scheduler.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException
+    {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return this.pool.awaitTermination(timeout, unit) && this.scheduler.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    public enum Priority
+    {
+        /**
+         * Commands and everything else a user is waiting for, handed to the pool right away.
+         */
+        INTERACTIVE,
+        /**
+         * Reloads, compilations and other work nobody is waiting for, at most {@code background} of these tasks run at once.
+         */
+        BACKGROUND,
+        /**
+         * Error reports, at most {@code reporting} of these tasks run at once.
+         */
+        REPORTING
+    }
+
+    /**
+     * A queue in front of the pool which hands at most {@code maxThreads} of its tasks to the pool at once.
+     * <br>Every task gets handed over on its own, so interactive tasks which arrive in the meantime don't have to wait for the whole queue.
+     * Scheduled tasks are timed by the scheduler of the pool and run in this lane once they are due, shutting down is delegated to the pool,
+     * so a lane can be passed to libraries which expect a {@link ScheduledExecutorService}.
+     */
+    protected class Lane extends AbstractExecutorService implements ScheduledExecutorService
+    {
+        protected final int maxThreads;
+        protected final AtomicLong queued;
+        protected final Queue<Runnable> queue;
+        protected final AtomicInteger running;
+
+        protected Lane(final int maxThreads)
+        {
+            this.maxThreads = Math.max(1, maxThreads);
+            this.queued = new AtomicLong(0);
+            this.queue = new ConcurrentLinkedQueue<>();
+            this.running = new AtomicInteger(0);
+        }
+
+        @Override
+        public void execute(final Runnable command)
+        {
+            if (ThreadPool.this.isShutdown())
+                throw new RejectedExecutionException("The pool has been shut down");
+            this.queued.incrementAndGet();
+            this.queue.add(command);
+            this.drain();
+        }
+
+        // every task added and every task finished tries to start the next one, so a task never gets stuck in the queue
+        protected void drain()
+        {
+            while (!this.queue.isEmpty())
+            {
+                final int running = this.running.get();
+                if (running >= this.maxThreads)
+                    return;
+                if (this.running.compareAndSet(running, running + 1))
+                {
+                    try
+                    {
+                        ThreadPool.this.pool.execute(this::runNext);
+                        return;
+                    }
+                    catch (final RejectedExecutionException e)
+                    {
+                        this.running.decrementAndGet();
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        protected void runNext()
+        {
+            try
+            {
+                final Runnable command = this.queue.poll();
+                if (command != null)
+                {
+                    this.queued.decrementAndGet();
+                    command.run();
+                }
+            }
+            finally
+            {
+                this.running.decrementAndGet();
+                // the remaining tasks are returned by shutdownNow or dropped once the pool has been shut down
+                if (!ThreadPool.this.isShutdown())
+                    this.drain();
+            }
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(final Runnable command, final long delay, final TimeUnit unit)
+        {
+            return ThreadPool.this.handOff(this, Executors.callable(command), false, delay, 0, unit);
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(final Callable<V> callable, final long delay, final TimeUnit unit)
+        {
+            return ThreadPool.this.handOff(this, callable, false, delay, 0, unit);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(final Runnable command, final long initialDelay, final long period, final TimeUnit unit)
+        {
+            return ThreadPool.this.handOff(this, Executors.callable(command), true, initialDelay, period, unit);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(final Runnable command, final long initialDelay, final long delay, final TimeUnit unit)
+        {
+            return ThreadPool.this.handOff(this, Executors.callable(command), true, initialDelay, -delay, unit);
+        }
+
+        @Override
+        public void shutdown()
+        {
+            ThreadPool.this.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow()
+        {
+            return ThreadPool.this.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown()
+        {
+            return ThreadPool.this.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated()
+        {
+            return ThreadPool.this.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException
+        {
+            return ThreadPool.this.awaitTermination(timeout, unit);
+        }
+
+        protected void clear(final List<Runnable> tasks)
+        {
+            Runnable command;
+            while ((command = this.queue.poll()) != null)
+            {
+                this.queued.decrementAndGet();
+                tasks.add(command);
+            }
+        }
+    }
+
+    /**
+     * A scheduled task which the scheduler thread hands over to an executor once it is due, see {@link #handOff(Executor, Callable, boolean, long, long, TimeUnit)}.
+     * <br>A repeated task is not handed over again while its last run is still in progress, so its runs never overlap,
+     * the delay of a task repeated with a fixed delay is measured between two hand-overs.
+     */
+    protected static class HandOff<V> extends FutureTask<V> implements ScheduledFuture<V>
+    {
+        protected final Executor executor;
+        protected final AtomicBoolean handedOver;
+        protected final boolean periodic;
+
+        protected volatile ScheduledFuture<?> timer;
+
+        protected HandOff(final Executor executor, final Callable<V> callable, final boolean periodic)
+        {
+            super(callable);
+            this.executor = executor;
+            this.handedOver = new AtomicBoolean(false);
+            this.periodic = periodic;
+        }
+
+        // runs on the scheduler thread, so it must not do more than handing the task over
+        protected void handOver()
+        {
+            if (this.isDone())
+            {
+                this.cancelTimer();
+                return;
+            }
+            if (!this.handedOver.compareAndSet(false, true))
+                return;
+
+            try
+            {
+                this.executor.execute(this);
+            }
+            catch (final RejectedExecutionException e)
+            {
+                this.setException(e);
+                this.cancelTimer();
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            if (!this.periodic)
+            {
+                super.run();
+                return;
+            }
+
+            try
+            {
+                // a repeated task stops once it threw, like it would on a ScheduledExecutorService
+                if (!this.runAndReset())
+                    this.cancelTimer();
+            }
+            finally
+            {
+                this.handedOver.set(false);
+            }
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning)
+        {
+            final boolean cancelled = super.cancel(mayInterruptIfRunning);
+            this.cancelTimer();
+            return cancelled;
+        }
+
+        @Override
+        public long getDelay(final TimeUnit unit)
+        {
+            final ScheduledFuture<?> timer = this.timer;
+            return timer == null ? 0 : timer.getDelay(unit);
+        }
+
+        @Override
+        public int compareTo(final Delayed other)
+        {
+            return Long.compare(this.getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+
+        protected void cancelTimer()
+        {
+            // the timer is set right after it has been scheduled, a task which is done by then gets its timer cancelled by the next hand-over
+            final ScheduledFuture<?> timer = this.timer;
+            if (timer != null)
+                timer.cancel(false);
+        }
+    }
+
+    public enum Mode
+    {
+        PLATFORM("platform"),
+        WORK_STEALING("work-stealing"),
+        VIRTUAL("virtual");
+
+        protected final String name;
+
+        Mode(final String name)
+        {
+            this.name = name;
+        }
+
+        public static Mode of(final String name)
+        {
+            for (final Mode mode : Mode.values())
+                if (mode.name.equalsIgnoreCase(name))
+                    return mode;
+            throw new IllegalArgumentException("Unknown executor mode: " + name);
+        }
+
+        public String getName()
+        {
+            return this.name;
+        }
+    }
+}
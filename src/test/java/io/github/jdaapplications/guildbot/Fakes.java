@@ -0,0 +1,84 @@
+package io.github.jdaapplications.guildbot;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.entities.Message;
+import net.dv8tion.jda.core.entities.SelfUser;
+import net.dv8tion.jda.core.entities.TextChannel;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+import org.hjson.JsonObject;
+
+/**
+ * Local stand-ins for the JDA entities the executor touches, so the tests and benchmarks don't need a connection to Discord.
+ * <br>Every method which has not been given an answer returns the default value of its return type.
+ */
+public class Fakes
+{
+    public static <T> T of(final Class<T> type, final Map<String, Object> answers)
+    {
+        return type.cast(Proxy.newProxyInstance(Fakes.class.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) ->
+        {
+            if (answers.containsKey(method.getName()))
+                return answers.get(method.getName());
+
+            switch (method.getName())
+            {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Fake" + type.getSimpleName();
+                default:
+                    final Class<?> returnType = method.getReturnType();
+                    return returnType.isPrimitive() && returnType != void.class ? Array.get(Array.newInstance(returnType, 1), 0) : null;
+            }
+        }));
+    }
+
+    public static JsonObject config()
+    {
+        // the snapshot and the persistence of the global store are disabled, so the tests and benchmarks don't touch the disk
+        return new JsonObject()
+                .add("guildId", 0)
+                .add("prefix", "&&")
+                .add("timeout", 5)
+                .add("snapshot", new JsonObject().add("file", ""))
+                .add("store", new JsonObject().add("file", ""))
+                .add("enginePool", new JsonObject().add("min", 0).add("max", 4));
+    }
+
+    public static GuildBot guildBot()
+    {
+        return Fakes.guildBot(Fakes.config());
+    }
+
+    public static GuildBot guildBot(final JsonObject config)
+    {
+        final Map<String, Object> selfUser = new HashMap<>();
+        selfUser.put("getAsMention", "<@1>");
+        selfUser.put("getIdLong", 1L);
+
+        final Map<String, Object> jda = new HashMap<>();
+        jda.put("getSelfUser", Fakes.of(SelfUser.class, selfUser));
+
+        return new GuildBot(config, Fakes.of(JDA.class, jda));
+    }
+
+    public static MessageReceivedEvent messageReceived(final GuildBot guildBot, final String content)
+    {
+        final TextChannel channel = Fakes.of(TextChannel.class, Collections.singletonMap("getIdLong", 2L));
+
+        final Map<String, Object> message = new HashMap<>();
+        message.put("getContentRaw", content);
+        message.put("getChannel", channel);
+        message.put("getTextChannel", channel);
+        message.put("getIdLong", 3L);
+
+        return new MessageReceivedEvent(guildBot.getJDA(), 0, Fakes.of(Message.class, message));
+    }
+}
@@ -0,0 +1,138 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import io.github.jdaapplications.guildbot.Fakes;
+import io.github.jdaapplications.guildbot.GuildBot;
+import io.github.jdaapplications.guildbot.executor.executable.Command;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+import org.hjson.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs many executions of one command at once against a single pool, more than the pool has maps and threads.
+ * <br>The command replies whether it saw the variable an earlier execution left behind, followed by its own arguments.
+ */
+@RunWith(Parameterized.class)
+public class ConcurrentExecutionTest
+{
+    protected static final int CALLERS = 16;
+    protected static final int EXECUTIONS = 25;
+
+    @Parameterized.Parameter
+    public String lang;
+
+    protected Command command;
+    protected CommandExecutor executor;
+    protected GuildBot guildBot;
+    protected EnginePool pool;
+    protected ScriptRegistry registry;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> langs()
+    {
+        return Arrays.asList(new Object[] { "js" }, new Object[] { "groovy" }, new Object[] { "graaljs" });
+    }
+
+    @Before
+    public void setUp()
+    {
+        this.guildBot = Fakes.guildBot();
+        // the fake channel can't send anything, the results are read from the executions instead
+        this.executor = new CommandExecutor(this.guildBot)
+        {
+            @Override
+            protected Execution dispatch(final Execution execution)
+            {
+                return execution;
+            }
+        };
+        this.pool = this.executor.getEnginePool();
+
+        // names which are not defined resolve to java packages inside of the importer js commands run in, so the global is asked directly
+        final String script = this.lang.equals("groovy")
+                ? "def seen = binding.hasVariable('leak') ? 'leaked ' + leak : 'clean'\nleak = args\nseen + ' ' + args"
+                : "var seen = this.leak === undefined && this.seen === undefined ? 'clean' : 'leaked ' + this.leak;\nleak = args;\nseen + ' ' + args";
+        this.command = new Command(this.guildBot, 1, new JsonObject().add("lang", this.lang), script);
+        this.registry = ScriptRegistry.builder().putCommand("cmd-stress", this.command).build();
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.guildBot.getThreadPool().shutdownNow();
+    }
+
+    @Test
+    public void executionsDontLeak() throws Exception
+    {
+        final ExecutorService callers = Executors.newFixedThreadPool(ConcurrentExecutionTest.CALLERS);
+        try
+        {
+            final List<Future<List<String>>> failures = new ArrayList<>();
+            for (int caller = 0; caller < ConcurrentExecutionTest.CALLERS; caller++)
+            {
+                final int id = caller;
+                failures.add(callers.submit(() -> this.run(id)));
+            }
+
+            for (final Future<List<String>> future : failures)
+                assertEquals("Executions returned wrong results", new ArrayList<>(), future.get(1, TimeUnit.MINUTES));
+        }
+        finally
+        {
+            callers.shutdownNow();
+        }
+
+        // every map has been given back, none of them got lost or created beyond the maximum
+        assertTrue("The pool exceeded its bounds: " + this.pool, this.pool.getSize() <= this.pool.getMax());
+        assertEquals("Not all maps have been released: " + this.pool, this.pool.getSize(), this.pool.getIdle());
+    }
+
+    /**
+     * Runs the command {@link #EXECUTIONS} times, a few executions at once, with arguments no other caller uses.
+     *
+     * @return The results which were not the expected ones
+     */
+    protected List<String> run(final int caller)
+    {
+        final List<String> failures = new ArrayList<>();
+        final List<CompletableFuture<Execution>> executions = new ArrayList<>();
+        for (int i = 0; i < ConcurrentExecutionTest.EXECUTIONS; i++)
+        {
+            final String args = caller + "-" + i;
+            final MessageReceivedEvent event = Fakes.messageReceived(this.guildBot, "&&stress " + args);
+            executions.add(this.executor.execute(this.registry, this.command, event, args));
+
+            if (executions.size() == 4 || i == ConcurrentExecutionTest.EXECUTIONS - 1)
+            {
+                for (final CompletableFuture<Execution> future : executions)
+                {
+                    final Execution execution = future.join();
+                    final Object expected = "clean " + execution.getArgs();
+                    if (!expected.equals(execution.getResult()))
+                        failures.add(String.valueOf(execution.getResult()));
+                    // the pool must stay within its bounds while executions are still waiting for a map
+                    if (this.pool.getSize() > this.pool.getMax())
+                        failures.add("pool exceeded its bounds: " + this.pool);
+                }
+                executions.clear();
+            }
+        }
+        return failures;
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import java.util.Arrays;
+import java.util.Collection;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+@RunWith(Parameterized.class)
+public class EngineMapTest
+{
+    @Parameterized.Parameter
+    public String lang;
+
+    protected Engine engine;
+    protected EngineMap engines;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> langs()
+    {
+        return Arrays.asList(new Object[] { "js" }, new Object[] { "groovy" }, new Object[] { "graaljs" });
+    }
+
+    @Before
+    public void setUp()
+    {
+        this.engine = Engine.getEngine(this.lang);
+        this.engines = new EngineMap();
+    }
+
+    @Test
+    public void resetRemovesFunctions() throws ScriptException
+    {
+        this.eval(this.engine == Engine.GROOVY ? "def leaked() { 1 }" : "function leaked() { return 1; }");
+        this.eval("leaked()");
+        this.engines.reset();
+
+        try
+        {
+            this.eval("leaked()");
+            fail("A function defined by the last execution survived the reset of the map");
+        }
+        catch (final ScriptException expected)
+        {
+            // the function is gone
+        }
+    }
+
+    @Test
+    public void resetRemovesVariables() throws ScriptException
+    {
+        this.eval(this.engine == Engine.GROOVY ? "leaked = 1" : "leaked = 1;");
+        this.engines.reset();
+
+        assertFalse(this.engines.getContext().getBindings(ScriptContext.ENGINE_SCOPE).containsKey("leaked"));
+    }
+
+    @Test
+    public void resetKeepsEngine() throws ScriptException
+    {
+        final ScriptEngine scriptEngine = this.engines.get(this.engine);
+        this.eval("1");
+        this.engines.reset();
+
+        // replacing an engine throws away everything it has cached, so engines which can be reset have to be kept
+        assertSame(scriptEngine, this.engines.get(this.engine));
+    }
+
+    protected Object eval(final String script) throws ScriptException
+    {
+        return this.engine.compile(script).eval(this.engines.get(this.engine), this.engines.getContext());
+    }
+}
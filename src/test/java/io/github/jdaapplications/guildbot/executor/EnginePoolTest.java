@@ -0,0 +1,84 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import io.github.jdaapplications.guildbot.Fakes;
+import io.github.jdaapplications.guildbot.GuildBot;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.hjson.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EnginePoolTest
+{
+    protected GuildBot guildBot;
+    protected EnginePool pool;
+
+    @Before
+    public void setUp()
+    {
+        final JsonObject config = Fakes.config();
+        config.set("enginePool", new JsonObject().add("min", 0).add("max", 1).add("maxWait", 1));
+        this.guildBot = Fakes.guildBot(config);
+        this.pool = new EnginePool(this.guildBot);
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.guildBot.getThreadPool().shutdownNow();
+    }
+
+    @Test
+    public void releaseCompletesWaiter() throws Exception
+    {
+        final EngineMap engines = this.pool.acquire().join();
+        final CompletableFuture<EngineMap> waiter = this.pool.acquire();
+        assertFalse("The pool handed out more maps than its maximum", waiter.isDone());
+
+        this.pool.release(engines);
+        assertSame(engines, waiter.get(1, TimeUnit.SECONDS));
+        assertEquals(1, this.pool.getWaits());
+    }
+
+    @Test
+    public void discardCompletesWaiter() throws Exception
+    {
+        final EngineMap engines = this.pool.acquire().join();
+        final CompletableFuture<EngineMap> waiter = this.pool.acquire();
+
+        // the freed capacity is used to create a new map for the waiting caller
+        this.pool.discard(engines);
+        final EngineMap created = waiter.get(10, TimeUnit.SECONDS);
+        assertTrue(created != engines);
+        assertEquals(1, this.pool.getSize());
+    }
+
+    @Test
+    public void waiterTimesOut() throws Exception
+    {
+        final EngineMap engines = this.pool.acquire().join();
+        try
+        {
+            this.pool.acquire().get(10, TimeUnit.SECONDS);
+            fail("A caller got a map from a pool which had none left");
+        }
+        catch (final ExecutionException expected)
+        {
+            assertTrue(expected.getCause() instanceof TimeoutException);
+        }
+
+        // the timed out caller doesn't take the map which gets released afterwards
+        this.pool.release(engines);
+        assertEquals(1, this.pool.getIdle());
+        assertSame(engines, this.pool.acquire().join());
+    }
+}
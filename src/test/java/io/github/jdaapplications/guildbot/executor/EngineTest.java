@@ -0,0 +1,38 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import java.util.Arrays;
+import java.util.Collection;
+import javax.script.ScriptException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(Parameterized.class)
+public class EngineTest
+{
+    @Parameterized.Parameter
+    public String lang;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> langs()
+    {
+        return Arrays.asList(new Object[] { "js" }, new Object[] { "groovy" }, new Object[] { "graaljs" });
+    }
+
+    @Test(expected = ScriptException.class)
+    public void compileRejectsSyntaxErrors() throws ScriptException
+    {
+        // syntax errors have to be reported when the channel is loaded, not by the first execution
+        Engine.getEngine(this.lang).compile("1 +* (");
+    }
+
+    @Test
+    public void compiledScriptsEvaluate() throws ScriptException
+    {
+        final Engine engine = Engine.getEngine(this.lang);
+        final EngineMap engines = new EngineMap();
+        assertEquals(3, ((Number) engine.compile("1 + 2").eval(engines.get(engine), engines.getContext())).intValue());
+    }
+}
@@ -0,0 +1,154 @@
+package io.github.jdaapplications.guildbot.executor;
+
+import io.github.jdaapplications.guildbot.Fakes;
+import io.github.jdaapplications.guildbot.GuildBot;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.script.Bindings;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import org.hjson.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GlobalStoreTest
+{
+    protected Path file;
+    protected GuildBot guildBot;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.file = Files.createTempFile("global", ".store.log");
+        final JsonObject config = Fakes.config();
+        config.set("store", new JsonObject().add("file", this.file.toString()).add("flushInterval", 3600).add("maxEntries", 100));
+        this.guildBot = Fakes.guildBot(config);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        this.guildBot.getThreadPool().shutdownNow();
+        Files.deleteIfExists(this.file);
+    }
+
+    @Test
+    public void jsArraysArePersistedAsArrays() throws Exception
+    {
+        final GlobalStore store = new GlobalStore(this.guildBot);
+        final ScriptEngine engine = new ScriptEngineManager().getEngineByName("nashorn");
+        final Bindings bindings = engine.createBindings();
+        bindings.put("global", store.getNamespace(GlobalStore.SHARED));
+        engine.eval("global.put('list', [1, 'two', [3]]); global.put('map', { a: [1] });", bindings);
+        store.flush();
+
+        final GlobalStore restored = new GlobalStore(this.guildBot);
+        restored.load();
+        final GlobalStore.Namespace global = restored.getNamespace(GlobalStore.SHARED);
+        assertEquals(Arrays.asList(1, "two", Collections.singletonList(3)), global.get("list"));
+        assertEquals(Collections.singletonList(1), ((Map<?, ?>) global.get("map")).get("a"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void storedValuesCantBeChangedInPlace()
+    {
+        final GlobalStore.Namespace global = new GlobalStore(this.guildBot).getNamespace(GlobalStore.SHARED);
+        final List<Object> list = new ArrayList<>(Arrays.asList(1, 2));
+        global.put("list", list);
+
+        // the caller's list is copied, changing it afterwards doesn't reach the store
+        list.add(3);
+        assertEquals(Arrays.asList(1, 2), global.get("list"));
+
+        try
+        {
+            ((List<Object>) global.get("list")).add(3);
+            fail("A stored list was changed in place, the change would never be persisted");
+        }
+        catch (final UnsupportedOperationException expected)
+        {
+            // it has to be put again
+        }
+    }
+
+    @Test
+    public void changesAreMarkedDirty()
+    {
+        final GlobalStore store = new GlobalStore(this.guildBot);
+        final GlobalStore.Namespace global = store.getNamespace(GlobalStore.SHARED);
+        global.put("counter", 1);
+        store.flush();
+        assertTrue(store.dirty.isEmpty());
+
+        global.computeIfPresent("counter", (k, v) -> (Integer) v + 1);
+        assertFalse(store.dirty.isEmpty());
+
+        store.flush();
+        // an unchanged value is not written again
+        global.computeIfAbsent("counter", k -> 0);
+        assertTrue(store.dirty.isEmpty());
+    }
+
+    @Test
+    public void capacityHoldsUnderConcurrentPuts() throws Exception
+    {
+        final GlobalStore.Namespace global = new GlobalStore(this.guildBot).getNamespace(GlobalStore.SHARED);
+        final ExecutorService writers = Executors.newFixedThreadPool(8);
+        try
+        {
+            final List<Future<Integer>> stored = new ArrayList<>();
+            for (int writer = 0; writer < 8; writer++)
+            {
+                final int id = writer;
+                stored.add(writers.submit(() ->
+                {
+                    int count = 0;
+                    for (int i = 0; i < 50; i++)
+                    {
+                        try
+                        {
+                            global.put(id + "-" + i, i);
+                            count++;
+                        }
+                        catch (final IllegalStateException e)
+                        {
+                            // the namespace is full
+                        }
+                    }
+                    return count;
+                }));
+            }
+
+            int total = 0;
+            for (final Future<Integer> future : stored)
+                total += future.get(1, TimeUnit.MINUTES);
+            assertEquals(100, total);
+            assertEquals(100, global.size());
+        }
+        finally
+        {
+            writers.shutdownNow();
+        }
+
+        // removing a key makes room for another one
+        global.remove(global.keySet().iterator().next());
+        global.put("another", 1);
+        assertEquals(100, global.size());
+    }
+}
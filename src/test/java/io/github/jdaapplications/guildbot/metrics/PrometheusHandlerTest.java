@@ -0,0 +1,60 @@
+package io.github.jdaapplications.guildbot.metrics;
+
+import io.github.jdaapplications.guildbot.Fakes;
+import io.github.jdaapplications.guildbot.GuildBot;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.entities.SelfUser;
+import net.dv8tion.jda.core.entities.TextChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PrometheusHandlerTest
+{
+    protected GuildBot guildBot;
+    protected Metrics metrics;
+
+    @Before
+    public void setUp()
+    {
+        // every channel id resolves to a channel of the same name
+        final Map<String, Object> jda = new HashMap<>();
+        jda.put("getSelfUser", Fakes.of(SelfUser.class, Collections.singletonMap("getIdLong", 1L)));
+        jda.put("getTextChannelById", Fakes.of(TextChannel.class, Collections.singletonMap("getName", "cmd-ping")));
+        this.guildBot = new GuildBot(Fakes.config(), Fakes.of(JDA.class, jda));
+
+        this.metrics = new Metrics(this.guildBot);
+        this.metrics.getCommand(10).recordError();
+        this.metrics.getCommand(11).recordError();
+        this.metrics.getCommand(11).recordError();
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.guildBot.getThreadPool().shutdownNow();
+    }
+
+    @Test
+    public void channelsWithTheSameNameAreSeparate()
+    {
+        final String scrape = new PrometheusHandler(this.metrics).scrape();
+        assertTrue(scrape, scrape.contains("guildbot_command_errors_total{command=\"cmd-ping\",channel_id=\"10\"} 1\n"));
+        assertTrue(scrape, scrape.contains("guildbot_command_errors_total{command=\"cmd-ping\",channel_id=\"11\"} 2\n"));
+    }
+
+    @Test
+    public void jmxKeysAreUnique()
+    {
+        final Map<String, CommandMetrics> commands = this.metrics.getCommands();
+        assertEquals(2, commands.size());
+        assertEquals(1, commands.get("cmd-ping#10").getErrors());
+        assertEquals(2, commands.get("cmd-ping#11").getErrors());
+    }
+}
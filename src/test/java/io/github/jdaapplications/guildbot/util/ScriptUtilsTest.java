@@ -0,0 +1,71 @@
+package io.github.jdaapplications.guildbot.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ScriptUtilsTest
+{
+    protected static final String CHECK = "checkInterrupt();";
+
+    @Test
+    public void bracedLoops()
+    {
+        assertEquals("while (true) { checkInterrupt(); x++; }", ScriptUtilsTest.inject("while (true) { x++; }"));
+        assertEquals("for (;;) { checkInterrupt(); x++; }", ScriptUtilsTest.inject("for (;;) { x++; }"));
+        assertEquals("do { checkInterrupt(); x++; } while (true);", ScriptUtilsTest.inject("do { x++; } while (true);"));
+    }
+
+    @Test
+    public void unbracedLoops()
+    {
+        assertEquals("while (true){ checkInterrupt(); ; }", ScriptUtilsTest.inject("while (true);"));
+        assertEquals("for (;;) { checkInterrupt(); x++; }", ScriptUtilsTest.inject("for (;;) x++;"));
+        assertEquals("for (;;) { checkInterrupt(); f(a, b); }", ScriptUtilsTest.inject("for (;;) f(a, b);"));
+    }
+
+    @Test
+    public void doLoopTail()
+    {
+        // the while of a do loop is no loop of its own
+        assertEquals("do { checkInterrupt(); x++; } while (true);", ScriptUtilsTest.inject("do x++; while (true);"));
+        assertEquals("do { checkInterrupt(); x++; }\nwhile (x < 3);", ScriptUtilsTest.inject("do { x++; }\nwhile (x < 3);"));
+    }
+
+    @Test
+    public void nestedLoops()
+    {
+        // a body which is a loop itself is left as it is, the inner loop checks often enough
+        assertEquals("for (;;) while (true){ checkInterrupt(); ; }", ScriptUtilsTest.inject("for (;;) while (true);"));
+        assertEquals("while (a) { checkInterrupt(); for (;;) { checkInterrupt(); x++; } }", ScriptUtilsTest.inject("while (a) { for (;;) x++; }"));
+    }
+
+    @Test
+    public void stringsAndCommentsAreSkipped()
+    {
+        final String script = "var s = 'while (true);'; // for (;;) x++;\n/* do x++; while (true); */ t = \"for (;;) {}\";";
+        assertEquals(script, ScriptUtilsTest.inject(script));
+    }
+
+    @Test
+    public void wordsContainingLoopKeywords()
+    {
+        final String script = "dowhile(x); format(y); whilex = 1;";
+        assertEquals(script, ScriptUtilsTest.inject(script));
+    }
+
+    @Test
+    public void bodiesWhichCantBeFoundAreLeft()
+    {
+        // the end of these bodies can't be found without parsing the script
+        final String block = "while (a) if (b) x++;";
+        assertEquals(block, ScriptUtilsTest.inject(block));
+        final String multiline = "while (a)\n    x = x\n        + 1";
+        assertEquals(multiline, ScriptUtilsTest.inject(multiline));
+    }
+
+    protected static String inject(final String script)
+    {
+        return ScriptUtils.injectLoopChecks(script, ScriptUtilsTest.CHECK);
+    }
+}
@@ -0,0 +1,157 @@
+package io.github.jdaapplications.guildbot.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.hjson.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ThreadPoolTest
+{
+    protected static final int THREADS = 4;
+    protected static final int BACKGROUND = 2;
+
+    protected ThreadPool pool;
+
+    @Before
+    public void setUp()
+    {
+        final JsonObject config = new JsonObject()
+                .add("mode", "platform")
+                .add("threads", ThreadPoolTest.THREADS)
+                .add("background", ThreadPoolTest.BACKGROUND)
+                .add("reporting", 1);
+        this.pool = new ThreadPool(config, (thread, throwable) -> {});
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.pool.shutdownNow();
+    }
+
+    @Test
+    public void reloadStormKeepsInteractiveLatency() throws Exception
+    {
+        // every compilation of the storm keeps its thread busy, queued up they would take 4 seconds on all threads
+        final long compileTime = TimeUnit.MILLISECONDS.toNanos(50);
+        final AtomicInteger running = new AtomicInteger(0);
+        final AtomicInteger maxRunning = new AtomicInteger(0);
+        for (int i = 0; i < 320; i++)
+        {
+            this.pool.execute(ThreadPool.Priority.BACKGROUND, () ->
+            {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                final long end = System.nanoTime() + compileTime;
+                while (System.nanoTime() < end && !Thread.currentThread().isInterrupted())
+                    ;
+                running.decrementAndGet();
+            });
+        }
+
+        final List<Long> latencies = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+        {
+            final long submitted = System.nanoTime();
+            final long started = CompletableFuture.supplyAsync(System::nanoTime, this.pool).get(5, TimeUnit.SECONDS);
+            latencies.add(started - submitted);
+            Thread.sleep(10);
+        }
+
+        // the storm has to be still going, otherwise the commands did not compete with it
+        assertTrue("The background lane is not saturated anymore", this.pool.getQueueSize(ThreadPool.Priority.BACKGROUND) > 0);
+        assertEquals("The storm used more threads than the background lane allows", ThreadPoolTest.BACKGROUND, maxRunning.get());
+
+        Collections.sort(latencies);
+        final long p90 = latencies.get(latencies.size() * 9 / 10);
+        assertTrue("Commands waited " + TimeUnit.NANOSECONDS.toMillis(p90) + "ms for a thread", p90 < TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void scheduledTasksRunInTheirLane() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicReference<String> thread = new AtomicReference<>();
+
+        // a task which blocks, like a rate limited webhook request, must neither run on nor delay the scheduler thread
+        final ScheduledFuture<?> blocking = this.pool.getExecutor(ThreadPool.Priority.REPORTING).schedule(() ->
+        {
+            thread.set(Thread.currentThread().getName());
+            release.await();
+            return null;
+        }, 10, TimeUnit.MILLISECONDS);
+
+        final CountDownLatch timer = new CountDownLatch(1);
+        this.pool.scheduleTimer(timer::countDown, 50, TimeUnit.MILLISECONDS);
+        assertTrue("The timer got delayed by a scheduled task", timer.await(1, TimeUnit.SECONDS));
+
+        assertNotNull("The scheduled task did not start", thread.get());
+        assertNotEquals("GuildBot-Scheduler", thread.get());
+        assertFalse(blocking.isDone());
+
+        release.countDown();
+        blocking.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void repeatedTasksDontOverlap() throws Exception
+    {
+        final AtomicInteger running = new AtomicInteger(0);
+        final AtomicInteger maxRunning = new AtomicInteger(0);
+        final CountDownLatch runs = new CountDownLatch(5);
+
+        final ScheduledFuture<?> future = this.pool.scheduleAtFixedRate(() ->
+        {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try
+            {
+                Thread.sleep(20);
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            runs.countDown();
+        }, 0, 5, TimeUnit.MILLISECONDS);
+
+        assertTrue(runs.await(5, TimeUnit.SECONDS));
+        future.cancel(false);
+        assertEquals(1, maxRunning.get());
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void quarantineIsCapped()
+    {
+        final List<Thread> stuck = new ArrayList<>();
+        for (int i = 0; i < ThreadPoolTest.THREADS; i++)
+        {
+            final Thread thread = new Thread(() -> {});
+            stuck.add(thread);
+            assertTrue(this.pool.quarantine(thread));
+        }
+
+        // the pool may not grow any further, the next stuck thread keeps its place
+        assertTrue(this.pool.isQuarantineFull());
+        assertFalse(this.pool.quarantine(new Thread(() -> {})));
+        assertEquals(ThreadPoolTest.THREADS, this.pool.getQuarantinedCount());
+
+        this.pool.release(stuck.get(0));
+        assertFalse(this.pool.isQuarantineFull());
+    }
+}